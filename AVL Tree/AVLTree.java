@@ -1,3 +1,12 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
 /**
  * AVLTree
  *
@@ -8,6 +17,30 @@
 public class AVLTree {
 	
 	private IAVLNode root;
+	private Aggregate aggregate;
+	private BlockedBloomFilter filter; // null unless enableFilter was called
+	private IntHashIndex<IAVLNode> index; // null unless enableIndex was called
+	private int compactThreshold; // 0 unless the tree was created adaptive
+	private int[] smallKeys; // the sorted keys while the tree is compact (root is null), null otherwise
+	private String[] smallValues;
+	private int smallSize;
+	private AVLNode pool; // freed nodes chained through their parent, each with a virtual left child
+	private int poolSize;
+	private int poolLimit; // 0 unless enableRecycling was called
+	private AVLTreeChangeFeed feed; // null unless setChangeFeed was called
+	private int feedId;
+	private long filterQueries;
+	private long filterNegatives;
+	private long filterFalsePositives;
+	
+	private static final int SNAPSHOT_MAGIC = 0x41564C54; // "AVLT"
+	private static final byte SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_BUFFER_SIZE = 1 << 16;
+	private static final int SEARCH_GROUP = 16; // descents advanced together by searchAll
+	private static final int FILTER_MIN_CAPACITY = 1024;
+	private static final int DIFF_LEAF = 16; // key ranges with at most this many items in both trees are compared item by item
+	private static final int[] NO_KEYS = new int[0];
+	private static final String[] NO_VALUES = new String[0];
 	
 	/**
 	 * public AVLTree()
@@ -19,10 +52,43 @@ public class AVLTree {
 		this.root = new AVLNode();
 	}
 	
+	/**
+	 * public AVLTree(Aggregate aggregate)
+	 * 
+	 * AVLTree constructor, creates an empty tree that maintains aggregate over every subtree,
+	 * next to its size. the aggregate is kept through insert, delete, rotations, join and split
+	 * (both trees of a join must use the same aggregate)
+	 */
+	public AVLTree(Aggregate aggregate)
+	{
+		this.aggregate = aggregate;
+		this.root = new AVLNode();
+	}
+	
+	/**
+	 * public AVLTree(int compactThreshold)
+	 * 
+	 * AVLTree constructor, creates an empty adaptive tree: while it has at most compactThreshold keys,
+	 * the items are kept in a sorted int[] and String[] pair (binary search, shifting inserts and deletes)
+	 * instead of nodes, so a small tree costs two arrays instead of a node per item and the virtual nodes.
+	 * the tree switches to nodes when an insert goes past compactThreshold, and back to arrays when deletes
+	 * leave at most compactThreshold / 2 keys. all the operations accept both representations;
+	 * getRoot, enableIndex and enableFilter switch to nodes, and a tree with an index or a filter stays with nodes
+	 * 
+	 * precondition: compactThreshold > 0
+	 */
+	public AVLTree(int compactThreshold)
+	{
+		this.compactThreshold = compactThreshold;
+		this.smallKeys = NO_KEYS;
+		this.smallValues = NO_VALUES;
+	}
+	
 	/**
 	 * public AVLTree(IAVLNode node)
 	 * 
-	 * AVLTree constructor, creates a new tree from existing subtree and separates it from its parent
+	 * AVLTree constructor, creates a new tree from existing subtree and separates it from its parent.
+	 * the new tree has no aggregate (split gives its result trees the aggregate of the tree)
 	 * 
 	 * precondition: subtree is AVL tree, node is not null
 	 */
@@ -47,7 +113,7 @@ public class AVLTree {
    * returns true if and only if the tree is empty
    */
   public boolean empty() {
-    return !root.isRealNode();
+    return size() == 0;
   }
 
   /**
@@ -56,14 +122,93 @@ public class AVLTree {
 	 * returns the info of an item with key k if it exists in the tree otherwise,
 	 * returns null
 	 * 
-	 * complexity is O(logn): calls a method that uses a binary search
+	 * complexity is O(logn): calls a method that uses a binary search,
+	 * O(1) when the filter rejects k (see enableFilter) or the tree has an index (see enableIndex)
 	 */
 	public String search(int k) {
-		IAVLNode node = this.treePosition(this.root, k);
-		if (node != null && node.getKey() == k) { //added null condition 
-			return node.getValue();
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			return pos >= 0 ? smallValues[pos] : null;
+		}
+		IAVLNode node = lookup(k);
+		return node == null ? null : node.getValue();
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 *
+	 * returns true if and only if an item with key k is in the tree
+	 *
+	 * complexity is O(log n), O(1) when the filter rejects k or the tree has an index
+	 */
+	public boolean contains(int k) {
+		if (smallKeys != null) {
+			return Arrays.binarySearch(smallKeys, 0, smallSize, k) >= 0;
+		}
+		return lookup(k) != null;
+	}
+
+	/**
+	 * public void searchAll(int[] keys, String[] out)
+	 *
+	 * sets out[j] to search(keys[j]) for every j. the keys are looked up in groups of SEARCH_GROUP descents
+	 * that advance in lock step, one level of every descent per round: the descents do not depend on
+	 * each other, so the processor can wait for the cache misses of all of them at the same time,
+	 * instead of one after the other as in consecutive calls to search.
+	 * keys rejected by the filter do not start a descent, and with an index there are no descents at all
+	 *
+	 * precondition: out.length >= keys.length
+	 *
+	 * complexity is O(keys.length * log n), O(keys.length) with an index
+	 */
+	public void searchAll(int[] keys, String[] out) {
+		if (smallKeys != null) {
+			for (int j = 0; j < keys.length; j++) {
+				out[j] = search(keys[j]);
+			}
+			return;
+		}
+		if (index != null) {
+			for (int j = 0; j < keys.length; j++) {
+				IAVLNode node = index.get(keys[j]);
+				out[j] = node == null ? null : node.getValue();
+			}
+			return;
+		}
+		IAVLNode[] lanes = new IAVLNode[SEARCH_GROUP];
+		for (int start = 0; start < keys.length; start += SEARCH_GROUP) {
+			int width = Math.min(SEARCH_GROUP, keys.length - start);
+			int active = 0;
+			for (int j = 0; j < width; j++) {
+				if (filterAccepts(keys[start + j])) {
+					lanes[j] = this.root;
+					active++;
+				} else {
+					out[start + j] = null;
+					lanes[j] = null;
+				}
+			}
+			while (active > 0) {
+				active = 0;
+				for (int j = 0; j < width; j++) {
+					IAVLNode node = lanes[j];
+					if (node == null) { // this descent already ended
+						continue;
+					}
+					int k = keys[start + j];
+					if (!node.isRealNode() || node.getKey() == k) {
+						out[start + j] = node.getValue(); // null for a virtual node
+						lanes[j] = null;
+						if (!node.isRealNode()) {
+							filterMissed();
+						}
+						continue;
+					}
+					lanes[j] = k < node.getKey() ? node.myGetLeft() : node.myGetRight();
+					active++;
+				}
+			}
 		}
-		return null;
 	}
 
 	/**
@@ -78,30 +223,158 @@ public class AVLTree {
 	 * rebalance in O(log n) and other operations in O(1)
 	 */
 	public int insert(int k, String i) {
-		IAVLNode newNode;
-		IAVLNode parent;
 		if (k < 0) { // key is not legal
 			return -1;
 		}
-		newNode = new AVLNode(k, i);
-		if (this.empty()) { // if the tree is empty, the node becomes the new root
-			this.root = newNode;
-			return 0;
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			return pos >= 0 ? -1 : smallInsert(-pos - 1, k, i);
 		}
-		parent = this.treePosition(this.root, k);
-		int parentKey = parent.getKey();
-		if (parentKey == k) { // key k already exists in the tree
+		IAVLNode parent = this.treePosition(this.root, k);
+		if (parent != null && parent.getKey() == k) { // key k already exists in the tree
 			return -1;
+		}
+		return attach(parent, k, i);
+	}
+
+	/**
+	 * public String put(int k, String i)
+	 *
+	 * sets the info of key k to i, inserting an item if k is not in the tree.
+	 * returns the previous info of k, or null if k was not in the tree (or k < 0, which is ignored like in insert).
+	 * replacing an info does not change the shape of the tree, so it is not rebalanced.
+	 * an info the aggregate of the tree rejects (its lift throws) leaves the tree and its change feed unchanged
+	 *
+	 * complexity is O(log n): a single descent, plus updating sizes and rebalancing only when an item is inserted
+	 * (and updating the aggregates up to the root when the tree has one)
+	 */
+	public String put(int k, String i) {
+		if (k < 0) {
+			return null;
+		}
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			if (pos >= 0) {
+				String old = smallValues[pos];
+				smallSet(pos, i);
+				return old;
+			}
+			smallInsert(-pos - 1, k, i);
+			return null;
+		}
+		IAVLNode node = this.treePosition(this.root, k);
+		if (node != null && node.getKey() == k) {
+			String old = node.getValue();
+			setInfo(node, i);
+			return old;
+		}
+		attach(node, k, i);
+		return null;
+	}
+
+	/**
+	 * public String putIfAbsent(int k, String i)
+	 *
+	 * inserts an item with key k and info i if k is not in the tree. returns the info of k if it was
+	 * already in the tree (the tree is not changed), null otherwise
+	 *
+	 * complexity is O(log n): a single descent
+	 */
+	public String putIfAbsent(int k, String i) {
+		if (k < 0) {
+			return null;
+		}
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			if (pos >= 0) {
+				return smallValues[pos];
+			}
+			smallInsert(-pos - 1, k, i);
+			return null;
+		}
+		IAVLNode node = this.treePosition(this.root, k);
+		if (node != null && node.getKey() == k) {
+			return node.getValue();
+		}
+		attach(node, k, i);
+		return null;
+	}
+
+	/**
+	 * public String computeIfPresent(int k, BiFunction<Integer, String, String> f)
+	 *
+	 * if k is in the tree, sets its info to f(k, info) and returns the new info.
+	 * if f returns null, the item is deleted. returns null if k is not in the tree.
+	 * like put, an info the aggregate rejects leaves the tree and its change feed unchanged
+	 *
+	 * complexity is O(log n): a single descent, and a delete only when f returns null
+	 */
+	public String computeIfPresent(int k, BiFunction<Integer, String, String> f) {
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			if (pos < 0) {
+				return null;
+			}
+			String res = f.apply(k, smallValues[pos]);
+			if (res == null) {
+				smallRemove(pos);
+			} else {
+				smallSet(pos, res);
+			}
+			return res;
+		}
+		IAVLNode node = lookup(k);
+		if (node == null) {
+			return null;
+		}
+		String res = f.apply(k, node.getValue());
+		if (res == null) {
+			delete(k);
 		} else {
-			newNode.setParent(parent);
-			if (k < parentKey) {
-				parent.setLeft(newNode);
+			setInfo(node, res);
+		}
+		return res;
+	}
+
+	/**
+	 * public String merge(int k, String i, BiFunction<String, String, String> f)
+	 *
+	 * inserts an item with key k and info i if k is not in the tree, otherwise sets the info of k
+	 * to f(info, i), deleting the item if f returns null. returns the new info of k (null if deleted or k < 0).
+	 * like put, an info the aggregate rejects leaves the tree and its change feed unchanged
+	 *
+	 * complexity is O(log n): a single descent, and a delete only when f returns null
+	 */
+	public String merge(int k, String i, BiFunction<String, String, String> f) {
+		if (k < 0) {
+			return null;
+		}
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			if (pos < 0) {
+				smallInsert(-pos - 1, k, i);
+				return i;
+			}
+			String res = f.apply(smallValues[pos], i);
+			if (res == null) {
+				smallRemove(pos);
 			} else {
-				parent.setRight(newNode);
+				smallSet(pos, res);
 			}
-			updateSizeUp(parent);
-			return Rebalance.rebalance(this, parent);
+			return res;
 		}
+		IAVLNode node = this.treePosition(this.root, k);
+		if (node == null || node.getKey() != k) {
+			attach(node, k, i);
+			return i;
+		}
+		String res = f.apply(node.getValue(), i);
+		if (res == null) {
+			delete(k);
+		} else {
+			setInfo(node, res);
+		}
+		return res;
 	}
 
 	/**
@@ -113,70 +386,95 @@ public class AVLTree {
 	 * item with key k was not found in the tree.
 	 * 
 	 * compelexity: O(log n): uses treePosition in O(log n) and helper delete functions in O(log n),
-	 * rebalance in O(log n) and other operations in O(1)
+	 * rebalance in O(log n) and other operations in O(1) (amortized, when the filter is rebuilt)
 	 */
 	public int delete(int k) {
-		IAVLNode node;
-		IAVLNode parent; //node that will need rebalancing
+		if (smallKeys != null) {
+			int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+			if (pos < 0) {
+				return -1;
+			}
+			smallRemove(pos);
+			return 0;
+		}
 		if (this.empty()) { //if the tree is empty than k is not a key in the tree
 			return -1;
 		}
-		node = treePosition(this.root, k);
-		parent = node.getParent();
+		IAVLNode node = treePosition(this.root, k);
 		if (node.getKey() != k) { 	//k is not found in the tree
 			return -1;
-		} else if (node.isALeaf()) { //if the node is a leaf, removes it
+		}
+		if (index != null) {
+			index.remove(k);
+		}
+		int res = removeNode(node);
+		if (feed != null) {
+			feed.delete(feedId, k);
+		}
+		filterRemoved();
+		compactIfSmall();
+		return res;
+	}
+
+	/**
+	 * private int removeNode(IAVLNode node)
+	 *
+	 * helper method to delete
+	 * removes node from the tree and rebalances, returns the same value as delete.
+	 * a node with 2 children is replaced by its successor node itself, so every other node keeps
+	 * its item and nothing is allocated. node is put in the pool if the tree recycles nodes
+	 *
+	 * precondition: node is a real node of the tree
+	 *
+	 * complexity is O(log n)
+	 */
+	private int removeNode(IAVLNode node) {
+		IAVLNode parent = node.getParent(); //node that will need rebalancing
+		if (node.isALeaf()) { //if the node is a leaf, removes it
+			IAVLNode freed = node.myGetRight(); //the left virtual child takes the place of node
 			deleteLeaf(node);
+			recycle(node, freed);
 			return Rebalance.rebalance(this, parent);
 		} else if (!node.myGetLeft().isRealNode() || !node.myGetRight().isRealNode()) { 	//the node has one child
+			IAVLNode freed = node.myGetLeft().isRealNode() ? node.myGetRight() : node.myGetLeft();
 			deleteNodeWithOneChild(node);
+			recycle(node, freed);
 			return Rebalance.rebalance(this, parent);
-		} else { 	//the node has 2 children
+		} else { 	//the node has 2 children, the successor is moved to its place
 			IAVLNode successor = successor(node);
-			int successorKey = successor.getKey();
-			String successorValue = successor.getValue();
-			parent = successor.getParent();
-			
-			IAVLNode replacement = new AVLNode(successorKey, successorValue); //defining new node with characteristics of the successor
-			IAVLNode nodeParent = node.getParent();
-			replacement.setParent(nodeParent);
-			if(nodeParent != null && nodeParent.isRealNode()) { //updating parent of new child
-				if (node.isLeftChild()) {
-					nodeParent.setLeft(replacement);
-				} else {
-					nodeParent.setRight(replacement);
-				}
+			IAVLNode freed = successor.myGetLeft(); //virtual, replaced by the left subtree of node
+			IAVLNode start; //lowest node whose height may have changed
+			if (successor.getParent() == node) { //successor is the right child, and keeps its right subtree
+				start = successor;
 			} else {
-				this.root = replacement;
+				start = successor.getParent();
+				IAVLNode successorRight = successor.myGetRight();
+				start.setLeft(successorRight);
+				successorRight.setParent(start);
+				IAVLNode rightChild = node.myGetRight();
+				successor.setRight(rightChild);
+				rightChild.setParent(successor);
 			}
 			IAVLNode leftChild = node.myGetLeft();
-			IAVLNode rightChild = node.myGetRight();
-			replacement.setLeft(leftChild);
-			replacement.setRight(rightChild);
-			if(leftChild.isRealNode()) { //updating left child of new parent
-				leftChild.setParent(replacement);
-			}
-			if(rightChild.isRealNode()) { //updating right child of new parent
-				rightChild.setParent(replacement);
-			}
-
-			Rebalance.updateHeight(replacement);
-			Rebalance.updateSize(nodeParent);
-			
-			//deleting successor from tree
-			if (successor.isALeaf()) { 
-				deleteLeaf(successor);
+			successor.setLeft(leftChild);
+			leftChild.setParent(successor);
+			IAVLNode nodeParent = node.getParent();
+			if (nodeParent == null) {
+				this.root = successor;
+			} else if (node.isLeftChild()) {
+				nodeParent.setLeft(successor);
 			} else {
-				deleteNodeWithOneChild(successor);
+				nodeParent.setRight(successor);
 			}
-			
-			if(parent.getKey() == node.getKey()) {
-				parent = replacement;
-			}
-			return Rebalance.rebalance(this, parent);
+			successor.setParent(nodeParent);
+			successor.setHeight(node.getHeight());
+			updateSizeUp(start);
+			recycle(node, freed);
+			return Rebalance.rebalance(this, start);
 		}
 	}
 
+
 	/**
 	 * public String min()
 	 *
@@ -189,6 +487,9 @@ public class AVLTree {
 		if(this.empty()) {
 			return null;
 		}
+		if (smallKeys != null) {
+			return smallValues[0];
+		}
 		IAVLNode min = minNode(this.root);
 		return min.getValue();
 	}
@@ -204,6 +505,9 @@ public class AVLTree {
 	   if (empty()) {
 		   return null;
 	   }
+	   if (smallKeys != null) {
+		   return smallValues[smallSize - 1];
+	   }
 	   IAVLNode curr = root;
 	   while (curr.myGetRight().isRealNode()) {
 		   curr = curr.myGetRight();
@@ -220,9 +524,12 @@ public class AVLTree {
    */
   public int[] keysToArray()
   {
+        if (smallKeys != null) {
+        	return Arrays.copyOf(smallKeys, smallSize);
+        }
         int n = size();
 	  	int[] arr = new int[n];
-	  	keysArray(arr, root, 0);
+	  	keysArray(arr);
         return arr;
   }
 
@@ -236,9 +543,12 @@ public class AVLTree {
    */
   public String[] infoToArray()
   {
+        if (smallKeys != null) {
+        	return Arrays.copyOf(smallValues, smallSize);
+        }
         int n = size();
 	  	String[] arr = new String[n];
-	  	infoArray(arr, root, 0);
+	  	infoArray(arr);
         return arr;
   }
 
@@ -252,19 +562,21 @@ public class AVLTree {
     */
    public int size()
    {
-	   return root.getSize();
+	   return smallKeys != null ? smallSize : root.getSize();
    }
    
      /**
     * public int getRoot()
     *
-    * Returns the root AVL node, or null if the tree is empty
+    * Returns the root AVL node, or null if the tree is empty.
+    * a compact tree switches to nodes first (see AVLTree(int compactThreshold))
     *
     * precondition: none
     * postcondition: none
     */
    public IAVLNode getRoot()
    {
+	   expand();
 	   return root;
    }
      /**
@@ -275,27 +587,64 @@ public class AVLTree {
 	* precondition: search(x) != null (therefore tree is not empty)
     * postcondition: none
     * complexity is O(logn): joins logn subtrees at worst case and overall rank difference sums up to logn (according to what was taught in class)
+    * the ancestors of x are reused as the join nodes, so only the two result trees are allocated.
+    * both result trees share the filter of the tree, which holds the keys of each of them; they replace it
+    * with their own filter when they rebuild it.
+    * with an index, the keys of the smaller result tree are moved to a new index, and the larger one
+    * keeps the index of the tree: O(log n + min(t1.size(), t2.size())) in total.
+    * the result trees of an adaptive tree are adaptive too, and are compact if they are small enough.
+    * the result trees of a tree that recycles nodes recycle them too, with the same pool limit and empty pools.
+    * a tree with a change feed appends a SPLIT record, and the result trees are attached to the feed with new ids
     */   
    public AVLTree[] split(int x)
    {
+	   if (smallKeys != null) {
+		   int pos = Arrays.binarySearch(smallKeys, 0, smallSize, x);
+		   AVLTree[] res = {smallTree(0, pos), smallTree(pos + 1, smallSize)};
+		   return splitFeed(x, res);
+	   }
 	   IAVLNode curr = treePosition(root, x);
-	   AVLTree larger = new AVLTree(curr.myGetRight());
+	   IAVLNode parent = curr.getParent();
+	   boolean fromRight = curr.isRightChild();
+	   curr.myGetLeft().setParent(null);
+	   curr.myGetRight().setParent(null);
 	   AVLTree smaller = new AVLTree(curr.myGetLeft());
-	   while (curr.getParent() != null) { 
-		   IAVLNode parent = curr.getParent();
-		   IAVLNode mergeNode = new AVLNode(parent.getKey(), parent.getValue());
-		   if (curr.isRightChild()) {
-			   AVLTree left = new AVLTree(parent.myGetLeft());
-			   smaller.join(mergeNode, left);
+	   AVLTree larger = new AVLTree(curr.myGetRight());
+	   smaller.aggregate = aggregate;
+	   larger.aggregate = aggregate;
+	   smaller.poolLimit = poolLimit;
+	   larger.poolLimit = poolLimit;
+	   while (parent != null) {
+		   IAVLNode next = parent.getParent();
+		   boolean parentFromRight = parent.isRightChild(); //computed before parent is moved to a result tree
+		   IAVLNode subtree;
+		   if (fromRight) {
+			   subtree = parent.myGetLeft();
+			   subtree.setParent(null);
+			   smaller.joinSubtree(parent, subtree);
 		   }
 		   else {
-			   AVLTree right = new AVLTree(parent.myGetRight());
-			   larger.join(mergeNode, right);
+			   subtree = parent.myGetRight();
+			   subtree.setParent(null);
+			   larger.joinSubtree(parent, subtree);
 		   }
-		   curr = parent;
+		   fromRight = parentFromRight;
+		   parent = next;
+	   }
+	   smaller.filter = filter;
+	   larger.filter = filter;
+	   if (index != null) {
+		   index.remove(x);
+		   splitIndex(smaller, larger);
+	   }
+	   if (compactThreshold > 0) {
+		   smaller.compactThreshold = compactThreshold;
+		   larger.compactThreshold = compactThreshold;
+		   smaller.compactIfSmall();
+		   larger.compactIfSmall();
 	   }
 	   AVLTree[] res = {smaller, larger};
-	   return res; 
+	   return splitFeed(x, res); 
    }
    
    /**
@@ -307,194 +656,1726 @@ public class AVLTree {
     * postcondition: none
     * 
     * complexity is O(|height() - t.height()| + 1): the method travels down to the merging point,
-    * and then travels up (|height() - t.height()| + 1) times at most to rebalance the tree 
+    * and then travels up (|height() - t.height()| + 1) times at most to rebalance the tree.
+    * when the tree has a filter and t does not share it, the keys of t are added to it:
+    * O(size of the filter) if t has a filter of the same size, otherwise the filter is rebuilt in O(n).
+    * with an index, the keys of the smaller tree are added to the index of the larger one,
+    * which is O(min(size(), t.size()) + 1), and the index of the larger one becomes the index of the tree
+    * (t without an index is indexed first if it is the larger one).
+    * if the tree and t are compact and the result fits in the compact threshold, the arrays are
+    * concatenated in O(compactThreshold); otherwise both switch to nodes first.
+    * a tree with a change feed appends a JOIN record, after attaching t to the feed if it is not (O(t.size()))
+    * both trees must use the same aggregate (or none), otherwise IllegalArgumentException is thrown
     */   
    public int join(IAVLNode x, AVLTree t)
    {
-	   if (empty() && t.empty()) { //both trees are empty
-		   root = x;
-		   return 1;
+	   if (t.aggregate != aggregate) {
+		   throw new IllegalArgumentException("joined trees use different aggregates");
 	   }
-	   if (empty()) { //original tree is empty
-		   t.insert(x.getKey(), x.getValue());
-		   root = t.getRoot();
-		   return height() + 2;
+	   if (feed != null) {
+		   if (t.feed != feed) { //the items of t are published first
+			   t.setChangeFeed(feed);
+		   }
+		   feed.join(feedId, x.getKey(), x.getValue(), t.feedId);
 	   }
-	   if (t.empty()) { //t is empty
-		   insert(x.getKey(), x.getValue());
-		   return height() + 2;
+	   if (smallKeys != null && t.smallKeys != null && smallSize + t.smallSize < compactThreshold) {
+		   return joinSmall(x, t);
 	   }
-	   int k = t.height();
-	   int treeRank = height();
-	   IAVLNode curr;
-	   int key = x.getKey();
-	   if ((key > t.getRoot().getKey()) && key < root.getKey()) { // t < x < original
-		   if (k > treeRank) {	//t has the bigger height
-			   curr = t.moveRight(treeRank, size());
-			   setJoinNodeRight(x);
-			   x.setLeft(curr);
-			   root = t.getRoot();
-		   }
-		   else {	//original has the bigger height
-			   curr = moveLeft(k, t.size());
-			   t.setJoinNodeLeft(x);
-			   x.setRight(curr);   
-		   }
+	   expand();
+	   t.expand();
+	   if (index != null) {
+		   joinIndex(x, t);
 	   }
-	   else {	// original < x < t
-		   if (k > treeRank) {	//t has the bigger height
-			   curr = t.moveLeft(treeRank, size());
-			   setJoinNodeLeft(x);
-			   x.setRight(curr);
-			   root = t.getRoot();
+	   BlockedBloomFilter other = t.filter;
+	   int res = joinSubtree(x, t.getRoot());
+	   if (filter != null && filter != other) {
+		   if (other != null && filter.canUnion(other)) {
+			   filter.union(other);
 		   }
-		   else {	//original has the bigger height
-			   curr = moveRight(k, t.size());
-			   t.setJoinNodeRight(x);
-			   x.setLeft(curr);
+		   else {
+			   buildFilter(filter.getFalsePositiveRate());
+			   return res;
 		   }
 	   }
-	   Rebalance.updateHeight(x);
-	   Rebalance.updateSize(x);
-	   IAVLNode parent = curr.getParent();
+	   filterAdded(x.getKey());
+	   return res;
+   }
+   
+   /**
+    * private int joinSubtree(IAVLNode x, IAVLNode other)
+    * 
+    * helper method to join and split
+    * joins the subtree of other (a detached root, possibly virtual) and the node x with the tree.
+    * the children of x are overwritten, so x may be a node taken from another tree.
+    * an empty side is handled by the same descent: the taller tree is walked down to a virtual node,
+    * which becomes a child of x, so no nodes are allocated.
+    * Returns the same value as join
+    * 
+    * precondition: keys(x,other) < keys() or keys(x,other) > keys()
+    * 
+    * complexity is O(|height() - other.getHeight()| + 1)
+    */
+   private int joinSubtree(IAVLNode x, IAVLNode other)
+   {
+	   IAVLNode mine = root;
+	   int key = x.getKey();
+	   boolean mineIsLow = mine.isRealNode() ? mine.getKey() < key : other.isRealNode() && other.getKey() > key;
+	   IAVLNode low = mineIsLow ? mine : other;
+	   IAVLNode high = mineIsLow ? other : mine;
+	   int lowRank = low.getHeight();
+	   int highRank = high.getHeight();
+	   boolean oneEmpty = mine.isRealNode() != other.isRealNode();
+	   IAVLNode curr;
+	   IAVLNode top;
+	   if (lowRank > highRank) {	//low has the bigger height, x hangs on its right spine
+		   curr = descendRight(low, highRank, high.getSize());
+		   x.setLeft(curr);
+		   x.setRight(high);
+		   high.setParent(x);
+		   top = low;
+	   }
+	   else {	//high has the bigger (or same) height, x hangs on its left spine
+		   curr = descendLeft(high, lowRank, low.getSize());
+		   x.setLeft(low);
+		   x.setRight(curr);
+		   low.setParent(x);
+		   top = high;
+	   }
+	   IAVLNode parent = curr == top ? null : curr.getParent();
 	   curr.setParent(x);
 	   x.setParent(parent);
-	   if (parent != null && parent.isRealNode()) {	//set parent
+	   Rebalance.updateHeight(x);
+	   Rebalance.updateSize(this, x);
+	   if (parent != null) {	//set parent
 		   if (key < parent.getKey()) {
 			   parent.setLeft(x);
 		   }
 		   else {
 			   parent.setRight(x);
 		   }
+		   root = top;
 		   Rebalance.rebalance(this, parent);
 	   }
 	   else {
 		   root = x;
 	   }
-	   return Math.abs(k - treeRank) + 1;
+	   if (aggregate != null) { //descendRight/descendLeft updated only the sizes of the spine above x
+		   updateAggregateUp(x);
+	   }
+	   if (oneEmpty) {
+		   return height() + 2;
+	   }
+	   return Math.abs(lowRank - highRank) + 1;
+   }
+   
+   /**
+    * public AVLTree[] partition(int k)
+    *
+    * splits the tree into k trees of consecutive keys, with sizes that differ by at most 1 (the first ones are the larger).
+    * Returns an array [t1, ..., tk] with keys(t1) < keys(t2) < ... < keys(tk); the last trees are empty when size() < k.
+    * the pivots are picked by rank with select, so no key has to be known in advance, and each is cut with split.
+    * split leaves its pivot out of both trees, so the pivot is inserted back as the minimum of the next tree.
+    * the result trees keep the settings of the tree like those of split (empty ones get them too)
+    * precondition: k >= 1
+    * postcondition: none
+    * complexity is O(k log n): a select, a split and an insert for each of the k - 1 pivots
+    */
+   public AVLTree[] partition(int k)
+   {
+	   AVLTree[] res = new AVLTree[k];
+	   AVLTree rest = this;
+	   for (int j = 0; j < k - 1; j++) {
+		   int n = rest.size();
+		   int take = (n + k - j - 1) / (k - j); //ceil(n / number of parts left)
+		   if (take == n) { //nothing left for the next parts
+			   res[j] = rest;
+			   rest = rest.emptyPart();
+			   continue;
+		   }
+		   int x = rest.select(take);
+		   String info = rest.search(x);
+		   AVLTree[] parts = rest.split(x);
+		   parts[1].insert(x, info);
+		   res[j] = parts[0];
+		   rest = parts[1];
+	   }
+	   res[k - 1] = rest;
+	   return res;
    }
    
    /**
-    * private void keysArray(int[] arr, IAVLNode node, int left)
+    * public int rank(int k)
     * 
-    * helper method to keysToArray()
-    * updates the received array to contain sorted tree keys
+    * returns the number of keys in the tree that are smaller than k
     * 
-    * Complexity is O(n): the recursion passes through each node once and inserts its key in the array
+    * complexity is O(log n): a single descent, adding the sizes of the left subtrees that are passed
     */
-   private void keysArray(int[] arr, IAVLNode node, int left)
+   public int rank(int k)
    {
-	   if (node.isRealNode()) {
-		   int i = left + node.myGetLeft().getSize();
-		   arr[i] = node.getKey();
-		   keysArray(arr, node.myGetLeft(), left);
-		   keysArray(arr, node.myGetRight(), i + 1);
+	   if (smallKeys != null) {
+		   int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+		   return pos >= 0 ? pos : -pos - 1;
+	   }
+	   int res = 0;
+	   IAVLNode node = root;
+	   while (node.isRealNode()) {
+		   if (k <= node.getKey()) {
+			   node = node.myGetLeft();
+		   }
+		   else {
+			   res += node.myGetLeft().getSize() + 1;
+			   node = node.myGetRight();
+		   }
 	   }
+	   return res;
    }
    
    /**
-    * private void infoArray(String[] arr, IAVLNode node, int left)
+    * public int select(int i)
     * 
-    * helper method to infoToArray()
-    * updates the received array to contain sorted tree values
+    * returns the key at index i of keysToArray(), that is the key with exactly i smaller keys in the tree
+    * 
+    * precondition: 0 <= i < size()
     * 
-    * Complexity is O(n): the recursion passes through each node once and inserts its value in the array
+    * complexity is O(log n): a single descent guided by the sizes of the left subtrees
     */
-   private void infoArray(String[] arr, IAVLNode node, int left)
+   public int select(int i)
    {
- 	   if (node.isRealNode()) {
- 		   int i = left + node.myGetLeft().getSize();
- 		   arr[i] = node.getValue();
- 		   infoArray(arr, node.myGetLeft(), left);
- 		   infoArray(arr, node.myGetRight(), i + 1);
- 	   }
+	   if (smallKeys != null) {
+		   return smallKeys[i];
+	   }
+	   return selectNode(i).getKey();
    }
-   
+
    /**
-	 * private IAVLNode treePosition(IAVLNode root, int k)
-	 * 
-	 * looks for key k in subtree of the node root and returns the last node encountered
-	 * 
-	 * complexity is O(logn): binary search
+    * public int floorKey(int k)
+    *
+    * returns the largest key in the tree that is smaller than or equal to k, or -1 if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public int floorKey(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallKeyAt(smallNeighbor(k, true, true));
+	   }
+	   return floorNode(k).getKey();
+   }
+
+   /**
+    * public String floorValue(int k)
+    *
+    * returns the info of the item with key floorKey(k), or null if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public String floorValue(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallValueAt(smallNeighbor(k, true, true));
+	   }
+	   return floorNode(k).getValue();
+   }
+
+   /**
+    * public int ceilingKey(int k)
+    *
+    * returns the smallest key in the tree that is larger than or equal to k, or -1 if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public int ceilingKey(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallKeyAt(smallNeighbor(k, false, true));
+	   }
+	   return ceilingNode(k).getKey();
+   }
+
+   /**
+    * public String ceilingValue(int k)
+    *
+    * returns the info of the item with key ceilingKey(k), or null if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public String ceilingValue(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallValueAt(smallNeighbor(k, false, true));
+	   }
+	   return ceilingNode(k).getValue();
+   }
+
+   /**
+    * public int lowerKey(int k)
+    *
+    * returns the largest key in the tree that is strictly smaller than k, or -1 if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public int lowerKey(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallKeyAt(smallNeighbor(k, true, false));
+	   }
+	   return lowerNode(k).getKey();
+   }
+
+   /**
+    * public String lowerValue(int k)
+    *
+    * returns the info of the item with key lowerKey(k), or null if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public String lowerValue(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallValueAt(smallNeighbor(k, true, false));
+	   }
+	   return lowerNode(k).getValue();
+   }
+
+   /**
+    * public int higherKey(int k)
+    *
+    * returns the smallest key in the tree that is strictly larger than k, or -1 if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public int higherKey(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallKeyAt(smallNeighbor(k, false, false));
+	   }
+	   return higherNode(k).getKey();
+   }
+
+   /**
+    * public String higherValue(int k)
+    *
+    * returns the info of the item with key higherKey(k), or null if there is none
+    *
+    * complexity is O(log n): a single descent
+    */
+   public String higherValue(int k)
+   {
+	   if (smallKeys != null) {
+		   return smallValueAt(smallNeighbor(k, false, false));
+	   }
+	   return higherNode(k).getValue();
+   }
+
+   /**
+    * public long aggregate()
+    * 
+    * returns the aggregate of the whole tree, or the identity of the aggregate if the tree is empty
+    * 
+    * precondition: the tree was created with an aggregate
+    * 
+    * complexity is O(1): the aggregate is kept in the root
+    */
+   public long aggregate()
+   {
+	   if (empty()) {
+		   return aggregate.identity();
+	   }
+	   return ((AVLNode) root).agg;
+   }
+   
+   /**
+    * public long aggregate(int lo, int hi)
+    * 
+    * returns the aggregate of the items with lo <= key <= hi, combined in key order,
+    * or the identity of the aggregate if there are none
+    * 
+    * precondition: the tree was created with an aggregate
+    * 
+    * complexity is O(log n): finds the highest node in the range, then walks down once towards lo
+    * and once towards hi, combining the aggregates of the subtrees that are entirely in the range
+    */
+   public long aggregate(int lo, int hi)
+   {
+	   IAVLNode split = root;
+	   while (split.isRealNode() && (split.getKey() < lo || split.getKey() > hi)) {
+		   split = split.getKey() < lo ? split.myGetRight() : split.myGetLeft();
+	   }
+	   if (!split.isRealNode()) {
+		   return aggregate.identity();
+	   }
+	   long left = aggregate.identity();
+	   IAVLNode node = split.myGetLeft();
+	   while (node.isRealNode()) { //nodes found later are smaller, so they are combined on the left
+		   if (node.getKey() >= lo) {
+			   left = aggregate.combine(aggregate.combine(lift(node), subtreeAggregate(node.myGetRight())), left);
+			   node = node.myGetLeft();
+		   }
+		   else {
+			   node = node.myGetRight();
+		   }
+	   }
+	   long right = aggregate.identity();
+	   node = split.myGetRight();
+	   while (node.isRealNode()) { //nodes found later are larger, so they are combined on the right
+		   if (node.getKey() <= hi) {
+			   right = aggregate.combine(right, aggregate.combine(subtreeAggregate(node.myGetLeft()), lift(node)));
+			   node = node.myGetRight();
+		   }
+		   else {
+			   node = node.myGetLeft();
+		   }
+	   }
+	   return aggregate.combine(aggregate.combine(left, lift(split)), right);
+   }
+   
+   /**
+    * public int[] stabbing(int point)
+    * 
+    * treats every item as the interval [key, aggregate.lift(key, info)] and returns a sorted array
+    * of the keys of the intervals that contain point
+    * 
+    * precondition: the tree aggregate is the maximal interval end, such as MAX_INTERVAL_END
+    * 
+    * complexity is O(log n + k log n) for k reported intervals: subtrees whose maximal end is
+    * smaller than point, and right subtrees of keys larger than point, are skipped
+    */
+   public int[] stabbing(int point)
+   {
+	   int[][] res = {new int[8]};
+	   int count = stabbing(root, point, res, 0);
+	   int[] trimmed = new int[count];
+	   System.arraycopy(res[0], 0, trimmed, 0, count);
+	   return trimmed;
+   }
+   
+   /**
+    * public int[] diff(AVLTree other)
+    * 
+    * returns a sorted array of the keys whose items differ between the tree and other:
+    * keys that are in only one of them, and keys with different infos.
+    * key ranges are compared by their aggregate, which for CONTENT_HASH does not depend on the shape
+    * of the trees, and only ranges with different hashes are halved (at a median key) and compared again,
+    * down to ranges of a few items that are compared item by item.
+    * the same halving can be run between remote replicas, exchanging aggregate(lo, hi) of each range
+    * 
+    * precondition: the tree and other were created with the CONTENT_HASH aggregate
+    * 
+    * complexity is O(d log^2 n) for d differing keys: each differing key is reached through O(log n)
+    * ranges, and the hash and the size of a range are O(log n) descents. O(log n) for identical trees
+    */
+   public int[] diff(AVLTree other)
+   {
+	   int[][] res = {new int[8]};
+	   int count = diff(other, 0, Integer.MAX_VALUE, res, 0);
+	   int[] trimmed = new int[count];
+	   System.arraycopy(res[0], 0, trimmed, 0, count);
+	   return trimmed;
+   }
+   
+   /**
+    * public void setChangeFeed(AVLTreeChangeFeed feed)
+    * 
+    * attaches the tree to feed: appends a CREATE record of a new tree id and a PUT record for every item,
+    * then every insert, delete, change of info, split and join of the tree is appended to feed.
+    * null detaches the tree
+    * 
+    * complexity is O(n)
+    */
+   public void setChangeFeed(AVLTreeChangeFeed feed)
+   {
+	   this.feed = feed;
+	   if (feed != null) {
+		   feedId = feed.create();
+		   int[] keys = keysToArray();
+		   String[] info = infoToArray();
+		   for (int j = 0; j < keys.length; j++) {
+			   feed.put(feedId, keys[j], info[j]);
+		   }
+	   }
+   }
+   
+   /**
+    * public AVLTreeChangeFeed getChangeFeed()
+    * 
+    * returns the change feed the tree appends its changes to, null if it is not attached to one
+    */
+   public AVLTreeChangeFeed getChangeFeed()
+   {
+	   return feed;
+   }
+   
+   /**
+    * public int getChangeFeedId()
+    * 
+    * returns the id of the tree in the records of its change feed
+    */
+   public int getChangeFeedId()
+   {
+	   return feedId;
+   }
+   
+   /**
+    * public void enableRecycling(int poolLimit)
+    * 
+    * keeps up to poolLimit deleted nodes in a pool of the tree, and builds inserted items in them,
+    * so that a steady stream of inserts and deletes allocates no nodes: a deleted node is kept with one of
+    * its virtual children, and an inserted node reuses the virtual node it replaces as its other child.
+    * a node in the pool is reused for another key, so nodes of deleted items must not be kept by the caller
+    * 
+    * precondition: poolLimit > 0
+    */
+   public void enableRecycling(int poolLimit)
+   {
+	   this.poolLimit = poolLimit;
+   }
+   
+   /**
+    * public void disableRecycling()
+    * 
+    * stops recycling nodes and releases the nodes in the pool
+    */
+   public void disableRecycling()
+   {
+	   poolLimit = 0;
+	   pool = null;
+	   poolSize = 0;
+   }
+   
+   /**
+    * public int getPoolSize()
+    * 
+    * returns the number of nodes in the pool
+    */
+   public int getPoolSize()
+   {
+	   return poolSize;
+   }
+   
+   /**
+    * public void enableIndex()
+    * 
+    * keeps a hash index from every key to its node next to the tree, so search, contains, searchAll and
+    * computeIfPresent find a node in O(1) expected time without descending the tree. rotations move nodes
+    * but never change their keys, so only insert, delete (which replaces the node of the successor),
+    * split and join update the index. the ordered operations are not affected
+    * 
+    * complexity is O(n)
+    */
+   public void enableIndex()
+   {
+	   expand();
+	   IntHashIndex<IAVLNode> res = new IntHashIndex<IAVLNode>(size());
+	   addToIndex(res, root);
+	   index = res;
+   }
+   
+   /**
+    * public void disableIndex()
+    * 
+    * removes the index, lookups descend the tree again. an adaptive tree may become compact
+    */
+   public void disableIndex()
+   {
+	   index = null;
+	   compactIfSmall();
+   }
+   
+   /**
+    * public boolean hasIndex()
+    * 
+    * returns true if and only if the tree has an index
+    */
+   public boolean hasIndex()
+   {
+	   return index != null;
+   }
+   
+   /**
+    * public void enableFilter(double falsePositiveRate)
+    * 
+    * puts a blocked Bloom filter of the keys in front of the tree: search, contains and searchAll
+    * return at once for a key rejected by the filter, instead of descending to a virtual node.
+    * about falsePositiveRate of the lookups of absent keys still descend. the filter is kept in sync by
+    * insert, delete, split and join; since keys can not be removed from it, it is rebuilt from the tree
+    * when the deleted keys it holds outnumber the keys of the tree, or it is full
+    * 
+    * precondition: 0 < falsePositiveRate < 1, otherwise IllegalArgumentException is thrown
+    * 
+    * complexity is O(n)
+    */
+   public void enableFilter(double falsePositiveRate)
+   {
+	   if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+		   throw new IllegalArgumentException("illegal false positive rate " + falsePositiveRate);
+	   }
+	   expand();
+	   buildFilter(falsePositiveRate);
+   }
+   
+   /**
+    * public void disableFilter()
+    * 
+    * removes the filter, lookups always descend the tree. the filter statistics are kept.
+    * an adaptive tree may become compact
+    */
+   public void disableFilter()
+   {
+	   filter = null;
+	   compactIfSmall();
+   }
+   
+   /**
+    * public boolean hasFilter()
+    * 
+    * returns true if and only if the tree has a filter
+    */
+   public boolean hasFilter()
+   {
+	   return filter != null;
+   }
+   
+   /**
+    * public long getFilterQueries()
+    * 
+    * returns the number of keys looked up in the filter
+    */
+   public long getFilterQueries()
+   {
+	   return filterQueries;
+   }
+   
+   /**
+    * public long getFilterNegatives()
+    * 
+    * returns the number of lookups answered by the filter alone (the key is not in the tree)
+    */
+   public long getFilterNegatives()
+   {
+	   return filterNegatives;
+   }
+   
+   /**
+    * public long getFilterFalsePositives()
+    * 
+    * returns the number of lookups the filter passed to the tree for a key that was not in it
+    */
+   public long getFilterFalsePositives()
+   {
+	   return filterFalsePositives;
+   }
+   
+   /**
+    * public double filterHitRate()
+    * 
+    * returns the fraction of the filter lookups that did not descend the tree, 0 if there were none
+    */
+   public double filterHitRate()
+   {
+	   return filterQueries == 0 ? 0 : (double) filterNegatives / filterQueries;
+   }
+   
+   /**
+    * public double filterFalsePositiveRate()
+    * 
+    * returns the fraction of the filter lookups of absent keys that descended the tree, 0 if there were none.
+    * this is the measured counterpart of the rate given to enableFilter
+    */
+   public double filterFalsePositiveRate()
+   {
+	   long absent = filterNegatives + filterFalsePositives;
+	   return absent == 0 ? 0 : (double) filterFalsePositives / absent;
+   }
+   
+   /**
+    * public void resetFilterStats()
+    * 
+    * zeroes the filter statistics
+    */
+   public void resetFilterStats()
+   {
+	   filterQueries = 0;
+	   filterNegatives = 0;
+	   filterFalsePositives = 0;
+   }
+   
+   /**
+    * public void writeSnapshot(WritableByteChannel out)
+    * 
+    * writes the tree to out in a compact binary format: a header (magic, version, number of nodes)
+    * followed by the nodes in-order, each as a varint key delta from the previous key and a
+    * varint-length-prefixed UTF-8 value (length 0 stands for null, otherwise length + 1).
+    * the nodes are streamed through a fixed size buffer, the tree is not copied to memory.
+    * 
+    * complexity is O(n): visits the nodes in-order using successor, which is O(1) amortized per node
+    */
+   public void writeSnapshot(WritableByteChannel out) throws IOException
+   {
+	   ByteBuffer buf = ByteBuffer.allocate(SNAPSHOT_BUFFER_SIZE);
+	   int n = size();
+	   buf.putInt(SNAPSHOT_MAGIC);
+	   buf.put(SNAPSHOT_VERSION);
+	   putVarint(buf, n);
+	   if (n > 0) {
+		   IAVLNode node = smallKeys == null ? minNode(root) : null; //a compact tree is read from its arrays
+		   int prevKey = 0;
+		   for (int i = 0; i < n; i++) {
+			   if (buf.remaining() < 10) {
+				   flush(buf, out);
+			   }
+			   int key = node == null ? smallKeys[i] : node.getKey();
+			   putVarint(buf, key - prevKey);
+			   prevKey = key;
+			   String value = node == null ? smallValues[i] : node.getValue();
+			   if (value == null) {
+				   putVarint(buf, 0);
+			   }
+			   else {
+				   byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				   putVarint(buf, bytes.length + 1);
+				   if (bytes.length > buf.remaining()) { //value does not fit, writes it directly
+					   flush(buf, out);
+					   ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+					   while (wrapped.hasRemaining()) {
+						   out.write(wrapped);
+					   }
+				   }
+				   else {
+					   buf.put(bytes);
+				   }
+			   }
+			   if (node != null && i < n - 1) {
+				   node = successor(node);
+			   }
+		   }
+	   }
+	   flush(buf, out);
+   }
+   
+   /**
+    * public static AVLTree readSnapshot(ReadableByteChannel in)
+    * 
+    * reads a tree written by writeSnapshot from in.
+    * the tree is built bottom-up directly from the sorted stream, without inserts or rotations.
+    * throws IOException if the stream is not a valid snapshot
+    * 
+    * complexity is O(n): every node is read and linked once
+    */
+   public static AVLTree readSnapshot(ReadableByteChannel in) throws IOException
+   {
+	   SnapshotReader reader = new SnapshotReader(in, SNAPSHOT_BUFFER_SIZE);
+	   if (reader.readInt() != SNAPSHOT_MAGIC || reader.readByte() != SNAPSHOT_VERSION) {
+		   throw new IOException("not an AVLTree snapshot");
+	   }
+	   int n = reader.readVarint();
+	   if (n < 0) {
+		   throw new IOException("illegal snapshot size " + n);
+	   }
+	   AVLTree tree = new AVLTree();
+	   if (n > 0) {
+		   tree.root = tree.buildSorted(reader, n);
+		   tree.root.setParent(null);
+	   }
+	   return tree;
+   }
+   
+   /**
+    * private IAVLNode buildSorted(SnapshotReader reader, int n)
+    * 
+    * helper method to readSnapshot()
+    * builds a perfectly balanced subtree of the next n nodes in the stream and returns its root.
+    * the left subtree is read first, then the root, then the right subtree.
+    * 
+    * precondition: n > 0
+    * 
+    * complexity is O(n): recursion depth is O(log n) and every node is created once
+    */
+   private IAVLNode buildSorted(SnapshotReader reader, int n) throws IOException
+   {
+	   int leftSize = (n - 1) / 2;
+	   int rightSize = n - 1 - leftSize;
+	   IAVLNode left = leftSize > 0 ? buildSorted(reader, leftSize) : null;
+	   int key = reader.nextKey();
+	   String value = reader.readValue();
+	   IAVLNode node = new AVLNode(key, value);
+	   if (left != null) {
+		   node.setLeft(left);
+		   left.setParent(node);
+	   }
+	   if (rightSize > 0) {
+		   IAVLNode right = buildSorted(reader, rightSize);
+		   node.setRight(right);
+		   right.setParent(node);
+	   }
+	   Rebalance.updateHeight(node);
+	   node.setSize(n);
+	   return node;
+   }
+   
+   /**
+    * private static void putVarint(ByteBuffer buf, int value)
+    * 
+    * writes value to buf as an unsigned varint (7 bits per byte, high bit means more bytes follow)
+    * 
+    * complexity is O(1): at most 5 bytes
+    */
+   private static void putVarint(ByteBuffer buf, int value)
+   {
+	   while ((value & ~0x7F) != 0) {
+		   buf.put((byte) ((value & 0x7F) | 0x80));
+		   value >>>= 7;
+	   }
+	   buf.put((byte) value);
+   }
+   
+   /**
+    * private static void flush(ByteBuffer buf, WritableByteChannel out)
+    * 
+    * writes the content of buf to out and clears buf
+    * 
+    * complexity is O(buf.position())
+    */
+   private static void flush(ByteBuffer buf, WritableByteChannel out) throws IOException
+   {
+	   buf.flip();
+	   while (buf.hasRemaining()) {
+		   out.write(buf);
+	   }
+	   buf.clear();
+   }
+   
+   /**
+    * private int stabbing(IAVLNode node, int point, int[][] res, int count)
+    * 
+    * helper method to stabbing(int point)
+    * appends to res[0] (growing it when full), in order, the keys of the intervals in the subtree
+    * of node that contain point, and returns the updated count
+    */
+   private int stabbing(IAVLNode node, int point, int[][] res, int count)
+   {
+	   if (!node.isRealNode() || ((AVLNode) node).agg < point) {
+		   return count;
+	   }
+	   count = stabbing(node.myGetLeft(), point, res, count);
+	   if (node.getKey() > point) { //all keys in the right subtree start after point
+		   return count;
+	   }
+	   if (lift(node) >= point) {
+		   if (count == res[0].length) {
+			   int[] grown = new int[2 * count];
+			   System.arraycopy(res[0], 0, grown, 0, count);
+			   res[0] = grown;
+		   }
+		   res[0][count++] = node.getKey();
+	   }
+	   return stabbing(node.myGetRight(), point, res, count);
+   }
+   
+   /**
+    * private int diff(AVLTree other, int lo, int hi, int[][] res, int count)
+    * 
+    * helper method to diff(AVLTree other)
+    * appends to res[0] (growing it when full), in order, the differing keys in the range [lo, hi],
+    * and returns the updated count
+    */
+   private int diff(AVLTree other, int lo, int hi, int[][] res, int count)
+   {
+	   if (aggregate(lo, hi) == other.aggregate(lo, hi)) {
+		   return count;
+	   }
+	   int mine = countRange(lo, hi);
+	   int theirs = other.countRange(lo, hi);
+	   if (mine + theirs <= DIFF_LEAF || mine == 0 || theirs == 0) {
+		   return diffItems(other, lo, hi, res, count);
+	   }
+	   AVLTree larger = mine >= theirs ? this : other;
+	   int mid = larger.select(larger.rank(lo) + Math.max(mine, theirs) / 2); //lo < mid <= hi, so both halves are smaller
+	   count = diff(other, lo, mid - 1, res, count);
+	   return diff(other, mid, hi, res, count);
+   }
+   
+   /**
+    * private int diffItems(AVLTree other, int lo, int hi, int[][] res, int count)
+    * 
+    * helper method to diff(AVLTree other)
+    * merges the keys of the tree and other in the range [lo, hi], appends the differing ones to res[0]
+    * and returns the updated count
+    * 
+    * complexity is O(m log n) for m keys in the range
+    */
+   private int diffItems(AVLTree other, int lo, int hi, int[][] res, int count)
+   {
+	   long a = inRange(ceilingKey(lo), hi);
+	   long b = inRange(other.ceilingKey(lo), hi);
+	   while (a != Long.MAX_VALUE || b != Long.MAX_VALUE) {
+		   long key = Math.min(a, b);
+		   if (a != b || !Objects.equals(search((int) a), other.search((int) b))) {
+			   if (count == res[0].length) {
+				   int[] grown = new int[2 * count];
+				   System.arraycopy(res[0], 0, grown, 0, count);
+				   res[0] = grown;
+			   }
+			   res[0][count++] = (int) key;
+		   }
+		   if (a == key) {
+			   a = inRange(higherKey((int) a), hi);
+		   }
+		   if (b == key) {
+			   b = inRange(other.higherKey((int) b), hi);
+		   }
+	   }
+	   return count;
+   }
+   
+   /**
+    * private static long inRange(int key, int hi)
+    * 
+    * helper method to diffItems, returns key, or Long.MAX_VALUE if key is -1 (none) or above hi
+    */
+   private static long inRange(int key, int hi)
+   {
+	   return key == -1 || key > hi ? Long.MAX_VALUE : key;
+   }
+   
+   /**
+    * private int countRange(int lo, int hi)
+    * 
+    * returns the number of keys k in the tree with lo <= k <= hi
+    * 
+    * complexity is O(log n): two rank descents
+    */
+   private int countRange(int lo, int hi)
+   {
+	   return (hi == Integer.MAX_VALUE ? size() : rank(hi + 1)) - rank(lo);
+   }
+   
+   /**
+    * private IAVLNode selectNode(int i)
+    * 
+    * helper method to select, returns the node at index i of the in-order traversal
+    * 
+    * precondition: 0 <= i < size()
+    */
+   private IAVLNode selectNode(int i)
+   {
+	   IAVLNode node = root;
+	   while (true) {
+		   int leftSize = node.myGetLeft().getSize();
+		   if (i == leftSize) {
+			   return node;
+		   }
+		   if (i < leftSize) {
+			   node = node.myGetLeft();
+		   }
+		   else {
+			   i -= leftSize + 1;
+			   node = node.myGetRight();
+		   }
+	   }
+   }
+   
+   /**
+    * private long lift(IAVLNode node)
+    * 
+    * returns the aggregate of the single item in node
+    */
+   private long lift(IAVLNode node)
+   {
+	   return aggregate.lift(node.getKey(), node.getValue());
+   }
+   
+   /**
+    * private long subtreeAggregate(IAVLNode node)
+    * 
+    * returns the aggregate of the subtree of node, the identity for a virtual node
+    */
+   private long subtreeAggregate(IAVLNode node)
+   {
+	   return node.isRealNode() ? ((AVLNode) node).agg : aggregate.identity();
+   }
+   
+   /**
+    * private void updateAggregateUp(IAVLNode node)
+    * 
+    * updates the aggregate of node and its ancestors until root
+    * 
+    * complexity: O(depth of node)
+    */
+   private void updateAggregateUp(IAVLNode node)
+   {
+	   while (node != null && node.isRealNode()) {
+		   ((AVLNode) node).updateAggregate(aggregate);
+		   node = node.getParent();
+	   }
+   }
+   
+   /**
+    * private void keysArray(int[] arr)
+    * 
+    * helper method to keysToArray()
+    * updates the received array to contain sorted tree keys
+    * 
+    * Complexity is O(n): walks the nodes in-order with successor, which is O(1) amortized per node
+    */
+   private void keysArray(int[] arr)
+   {
+	   if (arr.length == 0) {
+		   return;
+	   }
+	   IAVLNode node = minNode(root);
+	   arr[0] = node.getKey();
+	   for (int i = 1; i < arr.length; i++) {
+		   node = successor(node);
+		   arr[i] = node.getKey();
+	   }
+   }
+   
+   /**
+    * private void infoArray(String[] arr)
+    * 
+    * helper method to infoToArray()
+    * updates the received array to contain sorted tree values
+    * 
+    * Complexity is O(n): walks the nodes in-order with successor, which is O(1) amortized per node
+    */
+   private void infoArray(String[] arr)
+   {
+	   if (arr.length == 0) {
+		   return;
+	   }
+	   IAVLNode node = minNode(root);
+	   arr[0] = node.getValue();
+	   for (int i = 1; i < arr.length; i++) {
+		   node = successor(node);
+		   arr[i] = node.getValue();
+	   }
+   }
+   
+   /**
+	 * private IAVLNode treePosition(IAVLNode root, int k)
+	 * 
+	 * looks for key k in subtree of the node root and returns the last node encountered
+	 * 
+	 * complexity is O(logn): binary search
+	 */
+	private IAVLNode treePosition(IAVLNode root, int k) {
+		IAVLNode node = null;
+		while (root.isRealNode()) {
+			node = root;
+			int key = node.getKey();
+			if (key == k) {
+				return root;
+			} else {
+				if (k < key) {
+					root = root.myGetLeft();
+				} else {
+					root = root.myGetRight();
+				}
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * private IAVLNode floorNode(int k)
+	 *
+	 * returns the node with the largest key <= k. if there is none, returns the virtual node
+	 * that ends the search path, whose key is -1 and whose value is null
+	 *
+	 * complexity is O(logn): binary search that remembers the last node passed on the right
+	 */
+	private IAVLNode floorNode(int k) {
+		IAVLNode node = this.root;
+		IAVLNode res = null;
+		while (node.isRealNode()) {
+			int key = node.getKey();
+			if (key == k) {
+				return node;
+			}
+			if (key < k) {
+				res = node;
+				node = node.myGetRight();
+			} else {
+				node = node.myGetLeft();
+			}
+		}
+		return res == null ? node : res;
+	}
+
+	/**
+	 * private IAVLNode ceilingNode(int k)
+	 *
+	 * returns the node with the smallest key >= k, or a virtual node if there is none (see floorNode)
+	 *
+	 * complexity is O(logn)
+	 */
+	private IAVLNode ceilingNode(int k) {
+		IAVLNode node = this.root;
+		IAVLNode res = null;
+		while (node.isRealNode()) {
+			int key = node.getKey();
+			if (key == k) {
+				return node;
+			}
+			if (key > k) {
+				res = node;
+				node = node.myGetLeft();
+			} else {
+				node = node.myGetRight();
+			}
+		}
+		return res == null ? node : res;
+	}
+
+	/**
+	 * private IAVLNode lowerNode(int k)
+	 *
+	 * returns the node with the largest key < k, or a virtual node if there is none (see floorNode)
+	 *
+	 * complexity is O(logn)
+	 */
+	private IAVLNode lowerNode(int k) {
+		IAVLNode node = this.root;
+		IAVLNode res = null;
+		while (node.isRealNode()) {
+			if (node.getKey() < k) {
+				res = node;
+				node = node.myGetRight();
+			} else {
+				node = node.myGetLeft();
+			}
+		}
+		return res == null ? node : res;
+	}
+
+	/**
+	 * private IAVLNode higherNode(int k)
+	 *
+	 * returns the node with the smallest key > k, or a virtual node if there is none (see floorNode)
+	 *
+	 * complexity is O(logn)
+	 */
+	private IAVLNode higherNode(int k) {
+		IAVLNode node = this.root;
+		IAVLNode res = null;
+		while (node.isRealNode()) {
+			if (node.getKey() > k) {
+				res = node;
+				node = node.myGetLeft();
+			} else {
+				node = node.myGetRight();
+			}
+		}
+		return res == null ? node : res;
+	}
+
+	/**
+	 * IAVLNode minNode(IAVLNode root)
+	 * 
+	 * find and return the node with the minimum key in a given subtree (given subtree's root)
+	 * 
+	 * precondition: root is a real node
+	 * 
+	 * complexity is O(logn): travels left through the height of the tree, in AVL height is log n.
+	 */
+	private IAVLNode minNode(IAVLNode root) { 
+		while(root.myGetLeft().isRealNode()) {
+			IAVLNode leftChild = root.myGetLeft();
+			root = leftChild;
+		}
+		return root;
+	}
+	
+	/**
+	 * private IAVLNode successor(IAVLNode node)
+	 * 
+	 * return the successor of a given node in a tree
+	 * 
+	 * preconditions: node is not maximal
+	 * 
+	 * complexity O(log n): worst case is traveling the height of the tree, in AVL height is log n.
+	 */
+	private IAVLNode successor(IAVLNode node) {
+		if (node.myGetRight().isRealNode()) {
+			return minNode(node.myGetRight());
+	
+		} else {
+			if (node.isLeftChild()) {
+				return node.getParent();
+			} else {
+				while (node.isRightChild()) {
+					node = node.getParent();
+				}
+				return node.getParent();
+			}
+		}
+	}
+	
+	/**
+	 * private void updateSizeUp(IAVLNode node)
+	 * 
+	 * update's node's size and ancestors' size until root
+	 * 
+	 * complexity: O(log n): worst case is height of the tree, in AVL height is O(log n)
+	 */
+	private void updateSizeUp(IAVLNode node) {
+		while(node != null) {
+			Rebalance.updateSize(this, node);
+			node = node.getParent();
+		}
+	}
+
+	/**
+	 * private int attach(IAVLNode parent, int k, String i)
+	 *
+	 * adds a new item as a child of parent, the last node of the search path of k (null for an empty tree),
+	 * in a node taken from the pool if it is not empty,
+	 * and rebalances. k is added to the index and the filter. returns the number of rebalancing operations
+	 *
+	 * precondition: parent == treePosition(root, k), k is not in the tree
+	 *
+	 * complexity is O(log n): updateSizeUp and rebalance
+	 */
+	private int attach(IAVLNode parent, int k, String i) {
+		IAVLNode spot = parent == null ? this.root : k < parent.getKey() ? parent.myGetLeft() : parent.myGetRight();
+		IAVLNode newNode = newNode(k, i, spot);
+		int res = 0;
+		if (parent == null) { // if the tree is empty, the node becomes the new root
+			this.root = newNode;
+		} else {
+			newNode.setParent(parent);
+			if (k < parent.getKey()) {
+				parent.setLeft(newNode);
+			} else {
+				parent.setRight(newNode);
+			}
+			updateSizeUp(parent);
+			res = Rebalance.rebalance(this, parent);
+		}
+		if (index != null) {
+			index.put(k, newNode);
+		}
+		if (feed != null) {
+			feed.put(feedId, k, i);
+		}
+		filterAdded(k); // after linking, so a rebuild of the filter sees k
+		return res;
+	}
+
+	/**
+	 * private void setInfo(IAVLNode node, String i)
+	 *
+	 * replaces the info of node, and updates the aggregates of node and its ancestors if the tree has one.
+	 * the change is appended to the change feed.
+	 * i is lifted before anything is changed, so if the aggregate rejects it (lift throws),
+	 * the tree and its change feed are unchanged
+	 *
+	 * complexity is O(1) without an aggregate, O(log n) with one
+	 */
+	private void setInfo(IAVLNode node, String i) {
+		long lifted = this.aggregate != null ? this.aggregate.lift(node.getKey(), i) : 0;
+		((AVLNode) node).setValue(i);
+		if (feed != null) {
+			feed.put(feedId, node.getKey(), i);
+		}
+		if (this.aggregate != null) {
+			((AVLNode) node).updateAggregate(this.aggregate, lifted);
+			updateAggregateUp(node.getParent());
+		}
+	}
+	
+	/**
+	 * private int smallInsert(int pos, int k, String i)
+	 *
+	 * inserts the item at index pos of the arrays of a compact tree. if the tree is full, it switches
+	 * to nodes and the item is inserted as a node. returns the number of rebalancing operations
+	 *
+	 * precondition: the tree is compact, pos is the insertion point of k, k is not in the tree
+	 *
+	 * complexity is O(compactThreshold)
+	 */
+	private int smallInsert(int pos, int k, String i) {
+		if (smallSize == compactThreshold) {
+			expand();
+			return attach(treePosition(this.root, k), k, i);
+		}
+		if (smallSize == smallKeys.length) { //the arrays grow by doubling, up to compactThreshold
+			int capacity = Math.min(compactThreshold, Math.max(4, 2 * smallSize));
+			smallKeys = Arrays.copyOf(smallKeys, capacity);
+			smallValues = Arrays.copyOf(smallValues, capacity);
+		}
+		System.arraycopy(smallKeys, pos, smallKeys, pos + 1, smallSize - pos);
+		System.arraycopy(smallValues, pos, smallValues, pos + 1, smallSize - pos);
+		smallKeys[pos] = k;
+		smallValues[pos] = i;
+		smallSize++;
+		if (feed != null) {
+			feed.put(feedId, k, i);
+		}
+		return 0;
+	}
+
+	/**
+	 * private void smallRemove(int pos)
+	 *
+	 * removes the item at index pos of the arrays of a compact tree
+	 *
+	 * complexity is O(compactThreshold)
+	 */
+	private void smallRemove(int pos) {
+		if (feed != null) {
+			feed.delete(feedId, smallKeys[pos]);
+		}
+		System.arraycopy(smallKeys, pos + 1, smallKeys, pos, smallSize - pos - 1);
+		System.arraycopy(smallValues, pos + 1, smallValues, pos, smallSize - pos - 1);
+		smallSize--;
+		smallValues[smallSize] = null;
+	}
+
+	/**
+	 * private void smallSet(int pos, String i)
+	 *
+	 * replaces the info of the item at index pos of the arrays of a compact tree
+	 */
+	private void smallSet(int pos, String i) {
+		smallValues[pos] = i;
+		if (feed != null) {
+			feed.put(feedId, smallKeys[pos], i);
+		}
+	}
+
+	/**
+	 * private int smallNeighbor(int k, boolean below, boolean inclusive)
+	 *
+	 * returns the index in the arrays of a compact tree of the largest key smaller than k (below)
+	 * or the smallest key larger than k (!below), or of k itself if inclusive. returns -1 if there is none
+	 *
+	 * complexity is O(log compactThreshold)
+	 */
+	private int smallNeighbor(int k, boolean below, boolean inclusive) {
+		int pos = Arrays.binarySearch(smallKeys, 0, smallSize, k);
+		if (pos >= 0 && inclusive) {
+			return pos;
+		}
+		int next = pos >= 0 ? pos + 1 : -pos - 1; //the first key larger than k
+		int prev = pos >= 0 ? pos - 1 : -pos - 2; //the last key smaller than k
+		if (below) {
+			return prev;
+		}
+		return next < smallSize ? next : -1;
+	}
+
+	private int smallKeyAt(int pos) {
+		return pos < 0 ? -1 : smallKeys[pos];
+	}
+
+	private String smallValueAt(int pos) {
+		return pos < 0 ? null : smallValues[pos];
+	}
+
+	/**
+	 * private AVLTree[] splitFeed(int x, AVLTree[] res)
+	 *
+	 * helper method to split
+	 * appends the SPLIT record of the tree at x and attaches the result trees res to the change feed,
+	 * if the tree has one. returns res
+	 */
+	private AVLTree[] splitFeed(int x, AVLTree[] res) {
+		if (feed != null) {
+			int[] ids = feed.split(feedId, x);
+			for (int j = 0; j < 2; j++) {
+				res[j].feed = feed;
+				res[j].feedId = ids[j];
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * private AVLTree emptyPart()
+	 *
+	 * helper method to partition
+	 * returns an empty tree with the aggregate, compact threshold, pool limit, index, filter and change feed of the tree
+	 */
+	private AVLTree emptyPart() {
+		AVLTree res = compactThreshold > 0 ? new AVLTree(compactThreshold) : new AVLTree(aggregate);
+		res.poolLimit = poolLimit;
+		if (index != null) {
+			res.enableIndex();
+		}
+		if (filter != null) {
+			res.enableFilter(filter.getFalsePositiveRate());
+		}
+		if (feed != null) {
+			res.setChangeFeed(feed);
+		}
+		return res;
+	}
+
+	/**
+	 * private AVLTree smallTree(int from, int to)
+	 *
+	 * helper method to split
+	 * returns a compact tree with the items at indices from (inclusive) to to (exclusive) of the arrays
+	 *
+	 * complexity is O(compactThreshold)
+	 */
+	private AVLTree smallTree(int from, int to) {
+		AVLTree res = new AVLTree(compactThreshold);
+		res.poolLimit = poolLimit;
+		if (to > from) {
+			res.smallKeys = Arrays.copyOfRange(smallKeys, from, to);
+			res.smallValues = Arrays.copyOfRange(smallValues, from, to);
+			res.smallSize = to - from;
+		}
+		return res;
+	}
+
+	/**
+	 * private int joinSmall(IAVLNode x, AVLTree t)
+	 *
+	 * helper method to join, when the tree and t are compact and the result is not larger than compactThreshold.
+	 * concatenates the items of the lower tree, x and the items of the higher tree into the arrays of the tree.
+	 * returns the same value as join, using height() for the heights
+	 *
+	 * complexity is O(compactThreshold)
+	 */
+	private int joinSmall(IAVLNode x, AVLTree t) {
+		int res = Math.abs(height() - t.height()) + 1;
+		int key = x.getKey();
+		boolean mineIsLow = smallSize > 0 ? smallKeys[0] < key : t.smallSize > 0 && t.smallKeys[0] > key;
+		AVLTree low = mineIsLow ? this : t;
+		AVLTree high = mineIsLow ? t : this;
+		int n = smallSize + t.smallSize + 1;
+		int[] keys = new int[Math.max(n, Math.min(compactThreshold, 4))];
+		String[] values = new String[keys.length];
+		System.arraycopy(low.smallKeys, 0, keys, 0, low.smallSize);
+		System.arraycopy(low.smallValues, 0, values, 0, low.smallSize);
+		keys[low.smallSize] = key;
+		values[low.smallSize] = x.getValue();
+		System.arraycopy(high.smallKeys, 0, keys, low.smallSize + 1, high.smallSize);
+		System.arraycopy(high.smallValues, 0, values, low.smallSize + 1, high.smallSize);
+		smallKeys = keys;
+		smallValues = values;
+		smallSize = n;
+		return res;
+	}
+
+	/**
+	 * private void expand()
+	 *
+	 * switches a compact tree to nodes: builds a perfectly balanced tree from the arrays.
+	 * does nothing if the tree is not compact
+	 *
+	 * complexity is O(compactThreshold)
+	 */
+	private void expand() {
+		if (smallKeys == null) {
+			return;
+		}
+		this.root = smallSize > 0 ? buildSorted(0, smallSize) : new AVLNode();
+		smallKeys = null;
+		smallValues = null;
+		smallSize = 0;
+	}
+
+	/**
+	 * private IAVLNode buildSorted(int from, int n)
+	 *
+	 * helper method to expand, like buildSorted(SnapshotReader, int) but reading the arrays of a compact tree.
+	 * builds a perfectly balanced subtree of the n items starting at index from, and returns its root
+	 *
+	 * precondition: n > 0
+	 *
+	 * complexity is O(n)
+	 */
+	private IAVLNode buildSorted(int from, int n) {
+		int leftSize = (n - 1) / 2;
+		int rightSize = n - 1 - leftSize;
+		IAVLNode node = new AVLNode(smallKeys[from + leftSize], smallValues[from + leftSize]);
+		if (leftSize > 0) {
+			IAVLNode left = buildSorted(from, leftSize);
+			node.setLeft(left);
+			left.setParent(node);
+		}
+		if (rightSize > 0) {
+			IAVLNode right = buildSorted(from + leftSize + 1, rightSize);
+			node.setRight(right);
+			right.setParent(node);
+		}
+		Rebalance.updateHeight(node);
+		node.setSize(n);
+		return node;
+	}
+
+	/**
+	 * private void compactIfSmall()
+	 *
+	 * switches an adaptive tree with nodes back to arrays if it has at most compactThreshold / 2 keys
+	 * (so that the tree does not switch on every insert and delete around compactThreshold),
+	 * and it has no index, filter or aggregate
+	 *
+	 * complexity is O(1), O(compactThreshold) when the tree switches
+	 */
+	private void compactIfSmall() {
+		if (smallKeys != null || compactThreshold == 0 || aggregate != null || filter != null || index != null) {
+			return;
+		}
+		int n = size();
+		if (n > compactThreshold / 2) {
+			return;
+		}
+		int[] keys = n == 0 ? NO_KEYS : new int[n];
+		String[] values = n == 0 ? NO_VALUES : new String[n];
+		if (n > 0) {
+			IAVLNode node = minNode(root);
+			for (int i = 0; i < n; i++) {
+				if (i > 0) {
+					node = successor(node);
+				}
+				keys[i] = node.getKey();
+				values[i] = node.getValue();
+			}
+		}
+		this.root = null;
+		pool = null; //the arrays do not use nodes
+		poolSize = 0;
+		smallKeys = keys;
+		smallValues = values;
+		smallSize = n;
+	}
+
+	/**
+	 * private IAVLNode lookup(int k)
+	 *
+	 * returns the node of key k, null if k is not in the tree. uses the index when the tree has one,
+	 * otherwise descends the tree unless the filter rejects k
+	 *
+	 * complexity is O(log n), O(1) with an index or when the filter rejects k
+	 */
+	private IAVLNode lookup(int k) {
+		if (index != null) {
+			return index.get(k);
+		}
+		if (!filterAccepts(k)) { // k is certainly not in the tree
+			return null;
+		}
+		IAVLNode node = this.treePosition(this.root, k);
+		if (node != null && node.getKey() == k) { //added null condition 
+			return node;
+		}
+		filterMissed();
+		return null;
+	}
+
+	/**
+	 * private void addToIndex(IntHashIndex<IAVLNode> idx, IAVLNode subtree)
+	 *
+	 * adds every node of subtree to idx, walking them in-order
+	 *
+	 * complexity is O(subtree.getSize())
 	 */
-	private IAVLNode treePosition(IAVLNode root, int k) {
-		IAVLNode node = null;
-		while (root.isRealNode()) {
-			node = root;
-			int key = node.getKey();
-			if (key == k) {
-				return root;
-			} else {
-				if (k < key) {
-					root = root.myGetLeft();
-				} else {
-					root = root.myGetRight();
-				}
+	private void addToIndex(IntHashIndex<IAVLNode> idx, IAVLNode subtree) {
+		int n = subtree.getSize();
+		if (n == 0) {
+			return;
+		}
+		IAVLNode node = minNode(subtree);
+		idx.put(node.getKey(), node);
+		for (int i = 1; i < n; i++) {
+			node = successor(node);
+			idx.put(node.getKey(), node);
+		}
+	}
+
+	/**
+	 * private void splitIndex(AVLTree smaller, AVLTree larger)
+	 *
+	 * helper method to split
+	 * gives the index of the tree, without the split key, to the larger of the result trees,
+	 * after moving the keys of the other one to a new index
+	 *
+	 * complexity is O(min(smaller.size(), larger.size()) + 1)
+	 */
+	private void splitIndex(AVLTree smaller, AVLTree larger) {
+		AVLTree small = smaller.size() <= larger.size() ? smaller : larger;
+		AVLTree big = small == smaller ? larger : smaller;
+		int n = small.size();
+		IntHashIndex<IAVLNode> res = new IntHashIndex<IAVLNode>(n);
+		IAVLNode node = n > 0 ? minNode(small.root) : null;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				node = successor(node);
 			}
+			index.remove(node.getKey());
+			res.put(node.getKey(), node);
 		}
-		return node;
+		small.index = res;
+		big.index = index;
 	}
-   
+
 	/**
-	 * IAVLNode minNode(IAVLNode root)
-	 * 
-	 * find and return the node with the minimum key in a given subtree (given subtree's root)
-	 * 
-	 * precondition: root is a real node
-	 * 
-	 * complexity is O(logn): travels left through the height of the tree, in AVL height is log n.
+	 * private void joinIndex(IAVLNode x, AVLTree t)
+	 *
+	 * helper method to join, called before the trees are joined
+	 * adds the nodes of the smaller of the tree and t to the index of the larger one (a new index if t
+	 * has none and is larger), adds x, and makes it the index of the tree
+	 *
+	 * complexity is O(min(size(), t.size()) + 1), O(size() + t.size()) if t is larger and has no index
 	 */
-	private IAVLNode minNode(IAVLNode root) { 
-		while(root.myGetLeft().isRealNode()) {
-			IAVLNode leftChild = root.myGetLeft();
-			root = leftChild;
+	private void joinIndex(IAVLNode x, AVLTree t) {
+		if (t.size() > size()) {
+			IntHashIndex<IAVLNode> res = t.index;
+			if (res == null) {
+				res = new IntHashIndex<IAVLNode>(size() + t.size() + 1);
+				addToIndex(res, t.root);
+			}
+			addToIndex(res, root);
+			index = res;
 		}
-		return root;
+		else {
+			addToIndex(index, t.root);
+		}
+		index.put(x.getKey(), x);
 	}
-	
+
 	/**
-	 * private IAVLNode successor(IAVLNode node)
-	 * 
-	 * return the successor of a given node in a tree
-	 * 
-	 * preconditions: node is not maximal
-	 * 
-	 * complexity O(log n): worst case is traveling the height of the tree, in AVL height is log n.
+	 * private boolean filterAccepts(int k)
+	 *
+	 * returns false if the filter rejects k, so k is certainly not in the tree, and counts the lookup.
+	 * returns true if the tree has no filter
 	 */
-	private IAVLNode successor(IAVLNode node) {
-		if (node.myGetRight().isRealNode()) {
-			return minNode(node.myGetRight());
-	
-		} else {
-			if (node.isLeftChild()) {
-				return node.getParent();
-			} else {
-				while (node.isRightChild()) {
-					node = node.getParent();
-				}
-				return node;
+	private boolean filterAccepts(int k) {
+		if (filter == null) {
+			return true;
+		}
+		filterQueries++;
+		if (!filter.mightContain(k)) {
+			filterNegatives++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * private void filterMissed()
+	 *
+	 * counts a lookup that passed the filter but did not find its key
+	 */
+	private void filterMissed() {
+		if (filter != null) {
+			filterFalsePositives++;
+		}
+	}
+
+	/**
+	 * private void filterAdded(int k)
+	 *
+	 * adds the new key k to the filter, and rebuilds it if it is full
+	 *
+	 * complexity is O(1) amortized: a rebuild of n keys follows at least n / 2 inserts or deletes
+	 */
+	private void filterAdded(int k) {
+		if (filter == null) {
+			return;
+		}
+		filter.add(k);
+		if (filter.getCount() > filter.getCapacity()) {
+			buildFilter(filter.getFalsePositiveRate());
+		}
+	}
+
+	/**
+	 * private void filterRemoved()
+	 *
+	 * called after a delete. the deleted key stays in the filter, so the filter is rebuilt
+	 * once it holds more deleted keys than keys of the tree
+	 *
+	 * complexity is O(1) amortized
+	 */
+	private void filterRemoved() {
+		if (filter != null && filter.getCount() > 2 * size() + FILTER_MIN_CAPACITY) {
+			buildFilter(filter.getFalsePositiveRate());
+		}
+	}
+
+	/**
+	 * private void buildFilter(double falsePositiveRate)
+	 *
+	 * replaces the filter with a new one that holds exactly the keys of the tree,
+	 * with room for twice as many keys
+	 *
+	 * complexity is O(n)
+	 */
+	private void buildFilter(double falsePositiveRate) {
+		int n = size();
+		BlockedBloomFilter res = new BlockedBloomFilter(Math.max(FILTER_MIN_CAPACITY, 2 * n), falsePositiveRate);
+		if (n > 0) {
+			IAVLNode node = minNode(root);
+			res.add(node.getKey());
+			for (int i = 1; i < n; i++) {
+				node = successor(node);
+				res.add(node.getKey());
 			}
 		}
+		filter = res;
 	}
-	
+
 	/**
-	 * private void updateSizeUp(IAVLNode node)
-	 * 
-	 * update's node's size and ancestors' size until root
-	 * 
-	 * complexity: O(log n): worst case is height of the tree, in AVL height is O(log n)
+	 * private IAVLNode newNode(int k, String i, IAVLNode spot)
+	 *
+	 * helper method to attach
+	 * returns a real node with key k and info i. the node is taken from the pool if it is not empty,
+	 * with the virtual node spot, which the new node replaces in the tree, as its right child
+	 *
+	 * complexity is O(1)
 	 */
-	private void updateSizeUp(IAVLNode node) {
-		while(node != null) {
-			Rebalance.updateSize(node);
-			node = node.getParent();
+	private IAVLNode newNode(int k, String i, IAVLNode spot) {
+		AVLNode node = pool;
+		if (node == null) {
+			return new AVLNode(k, i);
 		}
+		pool = (AVLNode) node.parent;
+		poolSize--;
+		node.key = k;
+		node.value = i;
+		node.size = 1;
+		node.height = 0;
+		node.parent = null;
+		node.right = spot;
+		node.left.setParent(node);
+		spot.setParent(node);
+		if (aggregate != null) {
+			node.agg = aggregate.lift(k, i);
+		}
+		return node;
 	}
-	
+
+	/**
+	 * private void recycle(IAVLNode node, IAVLNode virtual)
+	 *
+	 * puts a node that was removed from the tree in the pool, with virtual, a virtual node that was
+	 * removed with it, as its left child. does nothing if the tree does not recycle nodes or the pool is full
+	 *
+	 * complexity is O(1)
+	 */
+	private void recycle(IAVLNode node, IAVLNode virtual) {
+		if (poolSize >= poolLimit) {
+			return;
+		}
+		AVLNode res = (AVLNode) node;
+		res.value = null;
+		res.left = virtual;
+		res.right = null;
+		res.parent = pool;
+		pool = res;
+		poolSize++;
+	}
+
 	/**
 	 * private void deleteLeaf(IAVLNode node)
 	 * 
-	 * delete a leaf node from tree by setting parent's child as virtual node
+	 * delete a leaf node from tree by setting parent's child as virtual node (the left child of the leaf)
 	 * 
 	 * preconditions: node is a leaf
 	 * 
@@ -502,14 +2383,16 @@ public class AVLTree {
 	 */
 	private void deleteLeaf(IAVLNode node) {
 		IAVLNode parent = node.getParent();
+		IAVLNode virtual = node.myGetLeft(); //reused, so no node is allocated
+		virtual.setParent(parent);
 		if (node.isLeftChild()) {
-			parent.setLeft(new AVLNode());
+			parent.setLeft(virtual);
 			updateSizeUp(parent);
 		} else if (node.isRightChild()) {
-			parent.setRight(new AVLNode());
+			parent.setRight(virtual);
 			updateSizeUp(parent);
 		} else { 	//node is a leaf and a root
-			this.root = new AVLNode();
+			this.root = virtual;
 		}
 	}
 	
@@ -571,6 +2454,9 @@ public class AVLTree {
 	 */
    public int height()
    {
+	   if (smallKeys != null) { //the height of a perfectly balanced tree of the same size
+		   return 31 - Integer.numberOfLeadingZeros(smallSize);
+	   }
 	   return root.getHeight();
    }
    
@@ -584,18 +2470,27 @@ public class AVLTree {
     * complexity is O(height() - rank): the method travels down until the merging point at rank (height() - rank)
     */
    public IAVLNode moveRight(int rank, int size) {
-	   return moveRightRec(rank, size, getRoot());
+	   return descendRight(getRoot(), rank, size);
    }
-   public IAVLNode moveRightRec(int rank, int size, IAVLNode x)
+   
+   /**
+    * private static IAVLNode descendRight(IAVLNode x, int rank, int size)
+    * 
+    * returns the first node in the right spine of the subtree of x with height lower than/equals rank,
+    * adds size + 1 to the size of every node passed on the way
+    * 
+    * complexity is O(x.getHeight() - rank)
+    */
+   private static IAVLNode descendRight(IAVLNode x, int rank, int size)
    {
-	   if (x.getHeight() <= rank) {
-		   return x;
-	   }
-	   if (!x.myGetRight().isRealNode()) {
-		   x.myGetRight().setParent(x);
+	   while (x.getHeight() > rank) {
+		   if (!x.myGetRight().isRealNode()) {
+			   x.myGetRight().setParent(x);
+		   }
+		   x.setSize(x.getSize() + size + 1);
+		   x = x.myGetRight();
 	   }
-	   x.setSize(x.getSize() + size + 1);
-	   return moveRightRec(rank, size, x.myGetRight());
+	   return x;
    }
    
    /**
@@ -608,51 +2503,29 @@ public class AVLTree {
     * complexity is O(height() - rank): the method travels down until the merging point at rank (height() - rank)
     */
    public IAVLNode moveLeft(int rank, int size) {
-	   return moveLeftRec(rank, size, getRoot());
-   }
-   public IAVLNode moveLeftRec(int rank, int size, IAVLNode x)
-   {
-	   if (x.getHeight() <= rank) {
-		   return x;
-	   }
-	   x.setSize(x.getSize() + size + 1);
-	   if (!x.myGetLeft().isRealNode()) {
-		   x.myGetLeft().setParent(x);
-	   }
-	   return moveLeftRec(rank, size, x.myGetLeft());
-   }
-   
-   /**
-    * public void setJoinNodeRight(IAVLNode node)
-    * 
-    * sets the right son of the node x
-    * 
-    * complexity is O(1): changing pointers only
-    */
-   public void setJoinNodeRight(IAVLNode node) {
-	   if (!empty()) {
-		   IAVLNode right = getRoot();
-		   node.setRight(right);
-		   right.setParent(node);
-	   }
+	   return descendLeft(getRoot(), rank, size);
    }
    
    /**
-    * public void setJoinNodeLeft(IAVLNode node)
+    * private static IAVLNode descendLeft(IAVLNode x, int rank, int size)
     * 
-    * sets the left son of the node x
+    * returns the first node in the left spine of the subtree of x with height lower than/equals rank,
+    * adds size + 1 to the size of every node passed on the way
     * 
-    * complexity is O(1): changing pointers only
+    * complexity is O(x.getHeight() - rank)
     */
-   public void setJoinNodeLeft(IAVLNode node) {
-	   if (!empty()) {
-		   IAVLNode left = getRoot();
-		   node.setLeft(left);
-		   left.setParent(node);
+   private static IAVLNode descendLeft(IAVLNode x, int rank, int size)
+   {
+	   while (x.getHeight() > rank) {
+		   if (!x.myGetLeft().isRealNode()) {
+			   x.myGetLeft().setParent(x);
+		   }
+		   x.setSize(x.getSize() + size + 1);
+		   x = x.myGetLeft();
 	   }
+	   return x;
    }
    
-   
    /**
 	 * 
 	 * Rebalance
@@ -684,18 +2557,19 @@ public class AVLTree {
 		}
 		
 		/**
-		 * private void updateSize(IAVLNode node)
+		 * private void updateSize(AVLTree tree, IAVLNode node)
 		 * 
-		 * updates the size of a tree node
+		 * updates the size of a tree node, and its aggregate if tree (the tree that holds it) has one
 		 * 
 		 * preconditions: node is not virtual
 		 * 
 		 * complexity is O(1): involves only simple arithmetic operations
 		 */
-		private static void updateSize(IAVLNode node)
+		private static void updateSize(AVLTree tree, IAVLNode node)
 		{
 			int size = 1 + node.myGetRight().getSize() + node.myGetLeft().getSize();
 			node.setSize(size);
+			((AVLNode) node).updateAggregate(tree.aggregate);
 		}
 		
 		/**
@@ -729,8 +2603,8 @@ public class AVLTree {
 			int counter = 1;
 			counter =+ updateHeight(parent);
 			counter += updateHeight(node);
-			updateSize(parent);
-			updateSize(node);
+			updateSize(tree, parent);
+			updateSize(tree, node);
 			return counter;
 		}
 		
@@ -765,8 +2639,8 @@ public class AVLTree {
 			int counter = 1;
 			counter += updateHeight(parent);
 			counter += updateHeight(node);
-			updateSize(parent);
-			updateSize(node);
+			updateSize(tree, parent);
+			updateSize(tree, node);
 			return counter;
 		}
 		
@@ -977,6 +2851,218 @@ public class AVLTree {
 		}
 	}
    
+	/**
+	 * 
+	 * SnapshotReader
+	 * 
+	 * reads the primitives of a snapshot from a channel through a fixed size buffer
+	 *
+	 */
+	private static class SnapshotReader
+	{
+		private final ReadableByteChannel in;
+		private final ByteBuffer buf;
+		private int prevKey;
+		
+		/**
+		 * private SnapshotReader(ReadableByteChannel in, int bufferSize)
+		 * 
+		 * SnapshotReader constructor, creates a reader with an empty buffer
+		 * 
+		 * Complexity: O(1)
+		 */
+		private SnapshotReader(ReadableByteChannel in, int bufferSize)
+		{
+			this.in = in;
+			this.buf = ByteBuffer.allocate(bufferSize);
+			this.buf.flip();
+			this.prevKey = 0;
+		}
+		
+		/**
+		 * private void require(int bytes)
+		 * 
+		 * makes sure at least bytes bytes are available in the buffer, reading from the channel if needed
+		 * throws IOException if the stream ends first
+		 * 
+		 * precondition: bytes <= buffer capacity
+		 */
+		private void require(int bytes) throws IOException
+		{
+			if (buf.remaining() >= bytes) {
+				return;
+			}
+			buf.compact();
+			while (buf.position() < bytes) {
+				if (in.read(buf) < 0) {
+					throw new IOException("unexpected end of snapshot");
+				}
+			}
+			buf.flip();
+		}
+		
+		private byte readByte() throws IOException
+		{
+			require(1);
+			return buf.get();
+		}
+		
+		private int readInt() throws IOException
+		{
+			require(4);
+			return buf.getInt();
+		}
+		
+		/**
+		 * private int readVarint()
+		 * 
+		 * reads an unsigned varint written by putVarint
+		 * 
+		 * Complexity: O(1)
+		 */
+		private int readVarint() throws IOException
+		{
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = readByte();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint in snapshot");
+		}
+		
+		/**
+		 * private int nextKey()
+		 * 
+		 * reads the next key delta and returns the absolute key
+		 * throws IOException if keys are not increasing
+		 */
+		private int nextKey() throws IOException
+		{
+			int key = prevKey + readVarint();
+			if (key < prevKey) {
+				throw new IOException("keys in snapshot are not sorted");
+			}
+			prevKey = key;
+			return key;
+		}
+		
+		/**
+		 * private String readValue()
+		 * 
+		 * reads a length-prefixed UTF-8 value, returns null for length 0
+		 * values larger than the buffer are read into a dedicated array
+		 */
+		private String readValue() throws IOException
+		{
+			int length = readVarint();
+			if (length == 0) {
+				return null;
+			}
+			length--;
+			if (length <= buf.capacity()) {
+				require(length);
+				String value = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+				buf.position(buf.position() + length);
+				return value;
+			}
+			byte[] bytes = new byte[length];
+			int copied = buf.remaining();
+			buf.get(bytes, 0, copied);
+			ByteBuffer rest = ByteBuffer.wrap(bytes, copied, length - copied);
+			while (rest.hasRemaining()) {
+				if (in.read(rest) < 0) {
+					throw new IOException("unexpected end of snapshot");
+				}
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+   
+	/**
+	 * public interface Aggregate
+	 * 
+	 * a monoid over long values that a tree maintains for every subtree:
+	 * the aggregate of a subtree is combine(combine(aggregate(left), lift(key, info)), aggregate(right)).
+	 * combine must be associative and identity must be its neutral element
+	 */
+	public interface Aggregate {
+		public long identity(); //the aggregate of an empty range
+		public long lift(int key, String info); //the aggregate of a single item
+		public long combine(long left, long right); //the aggregate of two adjacent ranges
+	}
+	
+	/**
+	 * sum of the items' info, parsed as long (null info counts as 0)
+	 */
+	public static final Aggregate SUM_OF_VALUES = new Aggregate() {
+		public long identity() { return 0; }
+		public long lift(int key, String info) { return info == null ? 0 : Long.parseLong(info); }
+		public long combine(long left, long right) { return left + right; }
+	};
+	
+	/**
+	 * minimal key, Long.MAX_VALUE for an empty range
+	 */
+	public static final Aggregate MIN_KEY = new Aggregate() {
+		public long identity() { return Long.MAX_VALUE; }
+		public long lift(int key, String info) { return key; }
+		public long combine(long left, long right) { return Math.min(left, right); }
+	};
+	
+	/**
+	 * maximal key, Long.MIN_VALUE for an empty range
+	 */
+	public static final Aggregate MAX_KEY = new Aggregate() {
+		public long identity() { return Long.MIN_VALUE; }
+		public long lift(int key, String info) { return key; }
+		public long combine(long left, long right) { return Math.max(left, right); }
+	};
+	
+	/**
+	 * maximal interval end, where an item represents the interval [key, info] (info parsed as long).
+	 * used by stabbing(int point)
+	 */
+	public static final Aggregate MAX_INTERVAL_END = new Aggregate() {
+		public long identity() { return Long.MIN_VALUE; }
+		public long lift(int key, String info) { return Long.parseLong(info); }
+		public long combine(long left, long right) { return Math.max(left, right); }
+	};
+	
+	/**
+	 * hash of the items, for comparing trees (see diff): the sum of a 64 bit hash of every (key, info) pair.
+	 * a sum does not depend on the order in which the items are combined, so trees with the same items
+	 * have the same aggregate over every key range whatever their shapes.
+	 * the hash folds the key, every char of info (four per step) and the length of info (-1 for null)
+	 * through the MurmurHash3 finalizer, so different items collide only by chance, about once in 2^64 pairs
+	 */
+	public static final Aggregate CONTENT_HASH = new Aggregate() {
+		public long identity() { return 0; }
+		public long lift(int key, String info) {
+			long h = mix(0x9E3779B97F4A7C15L ^ key); //the seed keeps (0, "") off the identity 0
+			int length = info == null ? -1 : info.length();
+			for (int i = 0; i < length; i += 4) {
+				long word = 0;
+				for (int j = i; j < Math.min(i + 4, length); j++) {
+					word = word << 16 | info.charAt(j);
+				}
+				h = mix(h ^ word);
+			}
+			return mix(h ^ length); //tells "a" from "\0a", which pack to the same word
+		}
+		private long mix(long h) { //the finalizer of MurmurHash3
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB93FE1A85EC9L;
+			h ^= h >>> 33;
+			return h;
+		}
+		public long combine(long left, long right) { return left + right; }
+	};
+	
 	/**
 	   * public interface IAVLNode
 	   * ! Do not delete or modify this - otherwise all tests will fail !
@@ -1016,6 +3102,7 @@ public class AVLTree {
 	  private int height;
 	  private int size;
 	  private IAVLNode parent;
+	  private long agg; // the aggregate of the subtree, 0 unless the tree that holds the node has an aggregate
 	  
 	  /**
 	   * public AVLNode()
@@ -1047,6 +3134,47 @@ public class AVLTree {
 		  left = new AVLNode();
 		  size = 1;
 		  height = 0;
+		  if (AVLTree.this.aggregate != null) {
+			  agg = AVLTree.this.aggregate.lift(key, value);
+		  }
+	  }
+	  
+	  /**
+	   * public void updateAggregate(Aggregate aggregate)
+	   * 
+	   * recomputes the node's aggregate from its item and its children's aggregates, using aggregate:
+	   * the aggregate of the tree that holds the node, which may not be the tree that created it.
+	   * does nothing if aggregate is null
+	   * 
+	   * Complexity: O(1)
+	   */
+	  public void updateAggregate(Aggregate aggregate)
+	  {
+		  if (aggregate == null || !isRealNode()) {
+			  return;
+		  }
+		  updateAggregate(aggregate, aggregate.lift(key, value));
+	  }
+
+	  /**
+	   * public void updateAggregate(Aggregate aggregate, long lifted)
+	   * 
+	   * like updateAggregate(Aggregate), with lifted, the already computed aggregate.lift of the node's item
+	   * 
+	   * precondition: aggregate != null and the node is real
+	   * 
+	   * Complexity: O(1)
+	   */
+	  public void updateAggregate(Aggregate aggregate, long lifted)
+	  {
+		  long res = lifted;
+		  if (left.isRealNode()) {
+			  res = aggregate.combine(((AVLNode) left).agg, res);
+		  }
+		  if (right.isRealNode()) {
+			  res = aggregate.combine(res, ((AVLNode) right).agg);
+		  }
+		  agg = res;
 	  }
 
 	  /**
@@ -1072,7 +3200,19 @@ public class AVLTree {
 	  {
 		  return value;
 	  }
-	
+
+	  /**
+	   * public void setValue(String value)
+	   *
+	   * sets the node's value. the aggregate is not updated, see AVLTree.setInfo
+	   *
+	   * Complexity: O(1)
+	   */
+	  public void setValue(String value)
+	  {
+		  this.value = value;
+	  }
+
 	  /**
 	   * public void setLeft(IAVLNode node)
 	   * 
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * AVLTreeBenchmark
+ *
+ * A timing harness for the lookups of AVLTree. a tree of n random keys is built, then batches of 256 random
+ * probes (half of them present) are looked up with consecutive calls to search and with searchAll.
+ * the tree should be far larger than the last level cache (millions of keys), so the descents miss the cache.
+ * both are then timed again with a filter in front of the tree (AVLTree.enableFilter), with missRatio of the probes absent,
+ * and with a hash index next to it (AVLTree.enableIndex).
+ * last, a delete + insert churn is timed without and with node recycling (AVLTree.enableRecycling), reporting
+ * the nanoseconds and the bytes allocated per operation (like the gc.alloc.rate.norm of a JMH gc profiler).
+ * finally, n random keys are inserted into a ShardedAVLTree by 1, 2, 4, ... threads (up to the number of cores),
+ * reporting the insert rate and the speedup over a single thread.
+ * every measurement is repeated after warm up rounds and the best time is reported, in nanoseconds per lookup.
+ *
+ * usage: java -Xmx4g AVLTreeBenchmark [n] [rounds] [missRatio]
+ */
+public class AVLTreeBenchmark
+{
+	private static final int WARMUP = 3;
+	private static final int BATCH = 256;
+	private static final int PROBES = 1 << 20;
+
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 21;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		double missRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+		Random random = new Random(1);
+		AVLTree tree = new AVLTree();
+		int[] present = new int[n];
+		for (int i = 0; i < n; i++) {
+			present[i] = 2 * random.nextInt(Integer.MAX_VALUE / 2); // even keys are the only ones inserted
+			tree.insert(present[i], "v");
+		}
+		int[] probes = new int[PROBES];
+		for (int i = 0; i < PROBES; i++) {
+			probes[i] = random.nextDouble() >= missRatio ? present[random.nextInt(n)] : 2 * random.nextInt(Integer.MAX_VALUE / 2) + 1;
+		}
+		System.out.printf("n=%d, %d lookups in batches of %d, %.0f%% misses%n", tree.size(), PROBES, BATCH, 100 * missRatio);
+		report(tree, probes, rounds, "");
+		tree.enableFilter(0.01);
+		report(tree, probes, rounds, "+filter");
+		System.out.printf("filter hit rate %.3f, false positive rate %.4f%n", tree.filterHitRate(), tree.filterFalsePositiveRate());
+		tree.enableIndex();
+		report(tree, probes, rounds, "+index");
+		tree.disableIndex();
+		tree.disableFilter();
+		churn(tree, present, rounds, "churn");
+		tree.enableRecycling(1024);
+		churn(tree, present, rounds, "churn+recycling");
+		ingest(n, rounds);
+	}
+
+	/**
+	 * private static void ingest(int n, int rounds)
+	 *
+	 * for a growing number of threads, times n inserts of random keys into a new ShardedAVLTree,
+	 * each thread inserting its own n / threads keys, and prints the best rate and the speedup over one thread
+	 */
+	private static void ingest(int n, int rounds)
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		Random random = new Random(2);
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = random.nextInt(Integer.MAX_VALUE);
+		}
+		int distinct = (int) Arrays.stream(keys).distinct().count();
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads = threads < cores && 2 * threads > cores ? cores : 2 * threads) {
+			long best = Long.MAX_VALUE;
+			for (int r = 0; r < WARMUP + rounds; r++) {
+				long time = timeIngest(keys, distinct, threads);
+				if (r >= WARMUP) {
+					best = Math.min(best, time);
+				}
+			}
+			double rate = n * 1e3 / best; // inserts per microsecond = millions per second
+			if (threads == 1) {
+				single = rate;
+			}
+			System.out.printf("%-17s %8.2f Minserts/s %6.2fx%n", "ingest x" + threads, rate, rate / single);
+		}
+	}
+
+	/**
+	 * private static long timeIngest(int[] keys, int distinct, int threads)
+	 *
+	 * inserts keys into a new ShardedAVLTree of 64 shards from threads threads, each taking a contiguous
+	 * slice of keys, and returns the time from the common start until the last thread finished, in nanoseconds.
+	 * throws IllegalStateException if the tree does not end up with the distinct keys
+	 */
+	private static long timeIngest(int[] keys, int distinct, int threads)
+	{
+		ShardedAVLTree tree = new ShardedAVLTree(64, 1 << 16);
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int from = (int) ((long) keys.length * t / threads);
+			int to = (int) ((long) keys.length * (t + 1) / threads);
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				for (int i = from; i < to; i++) {
+					tree.insert(keys[i], "v");
+				}
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		long time = System.nanoTime() - begin;
+		if (tree.size() != distinct) {
+			throw new IllegalStateException(tree.size() + " keys after ingest, expected " + distinct);
+		}
+		return time;
+	}
+
+	/**
+	 * private static void churn(AVLTree tree, int[] present, int rounds, String name)
+	 *
+	 * times PROBES operations that alternately delete a present key and insert an absent one (the next odd key),
+	 * then put the keys back, and prints the best time and the bytes allocated per operation
+	 */
+	private static void churn(AVLTree tree, int[] present, int rounds, String name)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		int ops = Math.min(PROBES, present.length) / 2;
+		long best = Long.MAX_VALUE;
+		long bytes = 0;
+		for (int r = 0; r < WARMUP + rounds; r++) {
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for (int i = 0; i < ops; i++) {
+				tree.delete(present[i]);
+				tree.insert(present[i] + 1, "v");
+			}
+			for (int i = 0; i < ops; i++) {
+				tree.delete(present[i] + 1);
+				tree.insert(present[i], "v");
+			}
+			long time = System.nanoTime() - start;
+			if (r >= WARMUP && time < best) {
+				best = time;
+				bytes = threads.getThreadAllocatedBytes(thread) - allocated;
+			}
+		}
+		System.out.printf("%-17s %8.1f ns/op %8.1f B/op%n", name, (double) best / (4 * ops), (double) bytes / (4 * ops));
+	}
+
+	/**
+	 * private static void report(AVLTree tree, int[] probes, int rounds, String suffix)
+	 *
+	 * times search and searchAll over the probes and prints the best time of each
+	 */
+	private static void report(AVLTree tree, int[] probes, int rounds, String suffix)
+	{
+		long bestSearch = Long.MAX_VALUE;
+		long bestSearchAll = Long.MAX_VALUE;
+		for (int r = 0; r < WARMUP + rounds; r++) {
+			long search = timeSearch(tree, probes);
+			long searchAll = timeSearchAll(tree, probes);
+			if (r >= WARMUP) {
+				bestSearch = Math.min(bestSearch, search);
+				bestSearchAll = Math.min(bestSearchAll, searchAll);
+			}
+		}
+		System.out.printf("%-17s %8.1f ns/lookup%n", "search" + suffix, (double) bestSearch / PROBES);
+		System.out.printf("%-17s %8.1f ns/lookup%n", "searchAll" + suffix, (double) bestSearchAll / PROBES);
+	}
+
+	/**
+	 * private static long timeSearch(AVLTree tree, int[] probes)
+	 *
+	 * looks up all the probes with search and returns the time it took, in nanoseconds
+	 */
+	private static long timeSearch(AVLTree tree, int[] probes)
+	{
+		String[] out = new String[BATCH];
+		int hits = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < probes.length; i += BATCH) {
+			for (int j = 0; j < BATCH; j++) {
+				out[j] = tree.search(probes[i + j]);
+			}
+			hits += out[0] == null ? 0 : 1;
+		}
+		long time = System.nanoTime() - start;
+		if (hits < 0) {	//keeps the results alive
+			System.out.print("");
+		}
+		return time;
+	}
+
+	/**
+	 * private static long timeSearchAll(AVLTree tree, int[] probes)
+	 *
+	 * looks up all the probes with searchAll and returns the time it took, in nanoseconds
+	 */
+	private static long timeSearchAll(AVLTree tree, int[] probes)
+	{
+		int[] keys = new int[BATCH];
+		String[] out = new String[BATCH];
+		int hits = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < probes.length; i += BATCH) {
+			System.arraycopy(probes, i, keys, 0, BATCH);
+			tree.searchAll(keys, out);
+			hits += out[0] == null ? 0 : 1;
+		}
+		long time = System.nanoTime() - start;
+		if (hits < 0) {
+			System.out.print("");
+		}
+		return time;
+	}
+}
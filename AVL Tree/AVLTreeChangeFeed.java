@@ -0,0 +1,467 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AVLTreeChangeFeed
+ *
+ * A change data capture stream of the mutations of AVLTrees, attached with AVLTree.setChangeFeed.
+ * every attached tree has an id, and every mutation is appended as a record to a preallocated ring:
+ * - CREATE tree: a tree was attached (followed by a PUT for each of its items)
+ * - PUT tree key value: key was inserted or its value was replaced
+ * - DELETE tree key: key was deleted
+ * - SPLIT tree key first second: the tree was split at key into the trees first (smaller) and second (larger)
+ * - JOIN tree key value first: the tree was joined with a node (key, value) and the tree first
+ * a tree that is joined without being attached is attached first, so its items are in the feed.
+ *
+ * the feed is a Flow.Publisher of batches: every subscriber has its own cursor in the ring and gets the
+ * records published after it subscribed, up to maxBatch per onNext and one onNext per requested item.
+ * the trees are mutated by a single thread, which appends the records without locks. when the ring is full
+ * because a subscriber did not take its records, the mutating thread waits for it at most maxLagNanos,
+ * then the subscriber is dropped with onError, so a slow subscriber delays the trees by a bounded time.
+ * records are copied from the ring to a batch owned by the subscription, so onNext never sees a record
+ * that was overwritten; the batch is reused, and is valid only during onNext.
+ */
+public class AVLTreeChangeFeed implements Flow.Publisher<AVLTreeChangeFeed.ChangeBatch>
+{
+	public static final byte CREATE = 1;
+	public static final byte PUT = 2;
+	public static final byte DELETE = 3;
+	public static final byte SPLIT = 4;
+	public static final byte JOIN = 5;
+
+	private static final long PARK_NANOS = 10000;
+
+	private final byte[] ops;
+	private final int[] trees;
+	private final int[] keys;
+	private final int[] firsts;
+	private final int[] seconds;
+	private final String[] values;
+	private final int capacity;
+	private final int mask;
+	private final int maxBatch;
+	private final long maxLagNanos;
+	private final Executor executor;
+	private final CopyOnWriteArrayList<FeedSubscription> subscriptions = new CopyOnWriteArrayList<FeedSubscription>();
+	private final AtomicLong published = new AtomicLong(); // records before published can be read
+	private final AtomicLong claimed = new AtomicLong(-1); // the last record whose slot is being written
+	private long next; // the next record, written only by the mutating thread
+	private long minCursor; // a lower bound of the cursors of the subscriptions
+	private int nextTreeId;
+	private volatile boolean closed;
+
+	/**
+	 * public AVLTreeChangeFeed(int capacity, int maxBatch, long maxLagNanos, Executor executor)
+	 *
+	 * creates a feed with a ring of capacity records (rounded up to a power of 2). the batches of each subscriber
+	 * are delivered by tasks run on executor, at most one at a time per subscriber
+	 *
+	 * precondition: capacity > 0, maxBatch > 0, maxLagNanos >= 0
+	 */
+	public AVLTreeChangeFeed(int capacity, int maxBatch, long maxLagNanos, Executor executor)
+	{
+		this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1) * 2);
+		this.mask = this.capacity - 1;
+		this.ops = new byte[this.capacity];
+		this.trees = new int[this.capacity];
+		this.keys = new int[this.capacity];
+		this.firsts = new int[this.capacity];
+		this.seconds = new int[this.capacity];
+		this.values = new String[this.capacity];
+		this.maxBatch = maxBatch;
+		this.maxLagNanos = maxLagNanos;
+		this.executor = executor;
+	}
+
+	/**
+	 * public void subscribe(Flow.Subscriber<? super ChangeBatch> subscriber)
+	 *
+	 * subscribes to the records published from now on
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super ChangeBatch> subscriber)
+	{
+		FeedSubscription subscription = new FeedSubscription(subscriber, published.get());
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+		subscription.signal(); //completes it if the feed is closed
+	}
+
+	/**
+	 * public void close()
+	 *
+	 * ends the feed: every subscriber gets onComplete after the records published before close.
+	 * the attached trees must not be changed afterwards
+	 */
+	public void close()
+	{
+		closed = true;
+		for (FeedSubscription subscription : subscriptions) {
+			subscription.signal();
+		}
+	}
+
+	/**
+	 * public int create()
+	 *
+	 * appends a CREATE record of a new tree id and returns the id. called by AVLTree.setChangeFeed
+	 */
+	public int create()
+	{
+		int id = nextTreeId++;
+		append(CREATE, id, -1, null, -1, -1);
+		return id;
+	}
+
+	/**
+	 * public void put(int tree, int key, String value)
+	 *
+	 * appends a PUT record
+	 */
+	public void put(int tree, int key, String value)
+	{
+		append(PUT, tree, key, value, -1, -1);
+	}
+
+	/**
+	 * public void delete(int tree, int key)
+	 *
+	 * appends a DELETE record
+	 */
+	public void delete(int tree, int key)
+	{
+		append(DELETE, tree, key, null, -1, -1);
+	}
+
+	/**
+	 * public int[] split(int tree, int key)
+	 *
+	 * appends a SPLIT record and returns the ids of the two result trees
+	 */
+	public int[] split(int tree, int key)
+	{
+		int smaller = nextTreeId++;
+		int larger = nextTreeId++;
+		append(SPLIT, tree, key, null, smaller, larger);
+		int[] res = {smaller, larger};
+		return res;
+	}
+
+	/**
+	 * public void join(int tree, int key, String value, int other)
+	 *
+	 * appends a JOIN record of the tree, the node (key, value) and the tree other
+	 */
+	public void join(int tree, int key, String value, int other)
+	{
+		append(JOIN, tree, key, value, other, -1);
+	}
+
+	/**
+	 * public int getCapacity()
+	 *
+	 * returns the number of records in the ring
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * public long getPublished()
+	 *
+	 * returns the number of records published so far
+	 */
+	public long getPublished()
+	{
+		return published.get();
+	}
+
+	/**
+	 * public int getSubscribers()
+	 *
+	 * returns the number of active subscriptions
+	 */
+	public int getSubscribers()
+	{
+		return subscriptions.size();
+	}
+
+	/**
+	 * private void append(byte op, int tree, int key, String value, int first, int second)
+	 *
+	 * writes a record to the next slot of the ring and publishes it. waits for the slowest subscriber
+	 * if the slot holds a record it did not take yet, and drops it after maxLagNanos.
+	 * the slot is claimed before it is written, so a subscriber that copies it at the same time notices
+	 *
+	 * complexity is O(number of subscribers), plus the wait when a subscriber lags
+	 */
+	private void append(byte op, int tree, int key, String value, int first, int second)
+	{
+		long seq = next;
+		if (seq - minCursor >= capacity) {
+			awaitSpace(seq);
+		}
+		claimed.set(seq);
+		VarHandle.storeStoreFence(); //the claim is visible before the slot changes
+		int i = (int) seq & mask;
+		ops[i] = op;
+		trees[i] = tree;
+		keys[i] = key;
+		values[i] = value;
+		firsts[i] = first;
+		seconds[i] = second;
+		next = seq + 1;
+		published.set(next);
+		for (FeedSubscription subscription : subscriptions) {
+			subscription.signalRecord();
+		}
+	}
+
+	/**
+	 * private void awaitSpace(long seq)
+	 *
+	 * waits until every subscriber took the record in the slot of seq, dropping the subscribers
+	 * that still lag after maxLagNanos
+	 */
+	private void awaitSpace(long seq)
+	{
+		long deadline = System.nanoTime() + maxLagNanos;
+		while (true) {
+			minCursor = seq;
+			for (FeedSubscription subscription : subscriptions) {
+				minCursor = Math.min(minCursor, subscription.cursor);
+			}
+			if (seq - minCursor < capacity) {
+				return;
+			}
+			if (System.nanoTime() - deadline >= 0) {
+				for (FeedSubscription subscription : subscriptions) {
+					if (seq - subscription.cursor >= capacity) {
+						subscription.fail(new IllegalStateException("subscriber lags more than " + capacity + " records"));
+					}
+				}
+			}
+			else {
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * public static class ChangeBatch
+	 *
+	 * a batch of consecutive records, see the record layout in the class comment.
+	 * unused fields are -1 (null for value)
+	 */
+	public static class ChangeBatch
+	{
+		private final byte[] ops;
+		private final int[] trees;
+		private final int[] keys;
+		private final int[] firsts;
+		private final int[] seconds;
+		private final String[] values;
+		private long sequence;
+		private int size;
+
+		private ChangeBatch(int maxBatch)
+		{
+			ops = new byte[maxBatch];
+			trees = new int[maxBatch];
+			keys = new int[maxBatch];
+			firsts = new int[maxBatch];
+			seconds = new int[maxBatch];
+			values = new String[maxBatch];
+		}
+
+		/**
+		 * public long getSequence()
+		 *
+		 * returns the position of the first record of the batch in the feed
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte getOp(int i) {
+			return ops[i];
+		}
+
+		public int getTree(int i) {
+			return trees[i];
+		}
+
+		public int getKey(int i) {
+			return keys[i];
+		}
+
+		public String getValue(int i) {
+			return values[i];
+		}
+
+		public int getFirst(int i) {
+			return firsts[i];
+		}
+
+		public int getSecond(int i) {
+			return seconds[i];
+		}
+	}
+
+	/**
+	 * private class FeedSubscription
+	 *
+	 * the cursor, demand and batch of one subscriber. deliveries run as executor tasks, and wip
+	 * counts the signals since the running task started, so that at most one task runs at a time
+	 */
+	private class FeedSubscription implements Flow.Subscription
+	{
+		private final Flow.Subscriber<? super ChangeBatch> subscriber;
+		private final ChangeBatch batch = new ChangeBatch(maxBatch);
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private final Runnable drainTask = this::drain; //one task object per subscription, not per record
+		private volatile long cursor; // the next record to copy
+		private volatile Throwable error;
+		private volatile boolean cancelled;
+
+		private FeedSubscription(Flow.Subscriber<? super ChangeBatch> subscriber, long cursor)
+		{
+			this.subscriber = subscriber;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public void request(long n)
+		{
+			if (n <= 0) {
+				fail(new IllegalArgumentException("non-positive request " + n));
+				return;
+			}
+			requested.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			signal();
+		}
+
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		/**
+		 * private void fail(Throwable e)
+		 *
+		 * removes the subscription and delivers e to the subscriber instead of further batches
+		 */
+		private void fail(Throwable e)
+		{
+			if (error == null) {
+				error = e;
+			}
+			subscriptions.remove(this);
+			signal();
+		}
+
+		private void signal()
+		{
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(drainTask);
+			}
+		}
+
+		/**
+		 * private void signalRecord()
+		 *
+		 * signals a newly published record, unless the subscriber has no outstanding demand:
+		 * then the record waits at the cursor and the next request signals it
+		 */
+		private void signalRecord()
+		{
+			if (requested.get() != 0) {
+				signal();
+			}
+		}
+
+		/**
+		 * private void drain()
+		 *
+		 * delivers batches while there is demand and there are published records, or the error
+		 */
+		private void drain()
+		{
+			int missed = 1;
+			do {
+				while (!cancelled) {
+					if (error != null) {
+						cancelled = true;
+						subscriber.onError(error);
+						break;
+					}
+					long available = published.get() - cursor;
+					if (available == 0 && closed) {
+						cancel();
+						subscriber.onComplete();
+						break;
+					}
+					if (available == 0 || requested.get() == 0) {
+						break;
+					}
+					if (!copy((int) Math.min(available, maxBatch))) {
+						fail(new IllegalStateException("records were overwritten before they were delivered"));
+						continue;
+					}
+					if (requested.get() != Long.MAX_VALUE) {
+						requested.decrementAndGet();
+					}
+					try {
+						subscriber.onNext(batch);
+					}
+					catch (Throwable e) {
+						cancel();
+						break;
+					}
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * private boolean copy(int n)
+		 *
+		 * copies the n records at the cursor to the batch and moves the cursor past them.
+		 * returns false if the producer claimed one of their slots for a newer record meanwhile
+		 */
+		private boolean copy(int n)
+		{
+			long start = cursor;
+			for (int j = 0; j < n; j++) {
+				int i = (int) (start + j) & mask;
+				batch.ops[j] = ops[i];
+				batch.trees[j] = trees[i];
+				batch.keys[j] = keys[i];
+				batch.values[j] = values[i];
+				batch.firsts[j] = firsts[i];
+				batch.seconds[j] = seconds[i];
+			}
+			VarHandle.loadLoadFence(); //the slots are read before the claim
+			if (claimed.get() >= start + capacity) {
+				return false;
+			}
+			batch.sequence = start;
+			batch.size = n;
+			cursor = start + n;
+			return true;
+		}
+	}
+}
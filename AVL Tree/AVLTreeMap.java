@@ -0,0 +1,740 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * AVLTreeMap
+ *
+ * A NavigableMap view of an AVLTree, so the tree can be used wherever a TreeMap<Integer, String> is.
+ * keys are the non negative keys of the tree, values are their infos (which may be null).
+ * every navigation is a floor/ceiling/lower/higher descent of the tree, size of a sub map is two rank descents.
+ *
+ * sub maps, head maps, tail maps and descending maps are views of the same tree, like those of TreeMap.
+ * a view keeps its range as inclusive bounds [lo, hi] (an exclusive int bound k is stored as k + 1 or k - 1)
+ * and a direction. iterators continue from the last key they returned, so they never throw
+ * ConcurrentModificationException; iterator remove and setValue of entry set entries are supported.
+ *
+ */
+public class AVLTreeMap extends AbstractMap<Integer, String> implements NavigableMap<Integer, String> {
+
+	private static final int NONE = -1;
+
+	private final AVLTree tree;
+	private final long lo;
+	private final long hi;
+	private final boolean descending;
+
+	/**
+	 * public AVLTreeMap()
+	 *
+	 * AVLTreeMap constructor, creates a map over a new empty tree
+	 */
+	public AVLTreeMap()
+	{
+		this(new AVLTree());
+	}
+
+	/**
+	 * public AVLTreeMap(AVLTree tree)
+	 *
+	 * AVLTreeMap constructor, creates a map view of tree: changes to either are seen by the other
+	 */
+	public AVLTreeMap(AVLTree tree)
+	{
+		this(tree, Long.MIN_VALUE, Long.MAX_VALUE, false);
+	}
+
+	private AVLTreeMap(AVLTree tree, long lo, long hi, boolean descending)
+	{
+		this.tree = tree;
+		this.lo = lo;
+		this.hi = hi;
+		this.descending = descending;
+	}
+
+	/**
+	 * public AVLTree getTree()
+	 *
+	 * returns the tree under this map
+	 */
+	public AVLTree getTree()
+	{
+		return tree;
+	}
+
+	/*** Map ***/
+
+	/**
+	 * public int size()
+	 *
+	 * complexity is O(1) for the whole tree, O(log n) for a sub map: rank(hi + 1) - rank(lo)
+	 */
+	@Override
+	public int size()
+	{
+		if (lo == Long.MIN_VALUE && hi == Long.MAX_VALUE) {
+			return tree.size();
+		}
+		if (lo > hi) {
+			return 0;
+		}
+		int upper = hi >= Integer.MAX_VALUE ? tree.size() : tree.rank((int) (hi + 1));
+		int lower = lo <= 0 ? 0 : lo > Integer.MAX_VALUE ? tree.size() : tree.rank((int) lo);
+		return Math.max(0, upper - lower);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return first() == NONE;
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		int k = (Integer) key;
+		return inRange(k) && tree.contains(k);
+	}
+
+	@Override
+	public String get(Object key)
+	{
+		int k = (Integer) key;
+		return inRange(k) ? tree.search(k) : null;
+	}
+
+	/**
+	 * public String put(Integer key, String value)
+	 *
+	 * maps key to value and returns the previous value (null if there was none)
+	 *
+	 * precondition: key >= 0 and key is in the range of this map, otherwise IllegalArgumentException is thrown
+	 *
+	 * complexity is O(log n): a single AVLTree.put descent
+	 */
+	@Override
+	public String put(Integer key, String value)
+	{
+		int k = key;
+		if (k < 0 || !inRange(k)) {
+			throw new IllegalArgumentException("key out of range: " + k);
+		}
+		return tree.put(k, value);
+	}
+
+	@Override
+	public String remove(Object key)
+	{
+		int k = (Integer) key;
+		if (k < 0 || !inRange(k) || tree.floorKey(k) != k) {
+			return null;
+		}
+		String old = tree.search(k);
+		tree.delete(k);
+		return old;
+	}
+
+	@Override
+	public Set<Entry<Integer, String>> entrySet()
+	{
+		return new AbstractSet<Entry<Integer, String>>() {
+			public Iterator<Entry<Integer, String>> iterator() {
+				return new KeyIterator<Entry<Integer, String>>(AVLTreeMap.this) {
+					Entry<Integer, String> value(int key) {
+						return new TreeEntry(tree, key, tree.search(key));
+					}
+				};
+			}
+
+			public int size() {
+				return AVLTreeMap.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Set<Integer> keySet()
+	{
+		return navigableKeySet();
+	}
+
+	/*** SortedMap ***/
+
+	@Override
+	public Comparator<? super Integer> comparator()
+	{
+		return descending ? Collections.reverseOrder() : null;
+	}
+
+	@Override
+	public Integer firstKey()
+	{
+		return key(first(), true);
+	}
+
+	@Override
+	public Integer lastKey()
+	{
+		return key(last(), true);
+	}
+
+	@Override
+	public SortedMap<Integer, String> subMap(Integer fromKey, Integer toKey)
+	{
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<Integer, String> headMap(Integer toKey)
+	{
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<Integer, String> tailMap(Integer fromKey)
+	{
+		return tailMap(fromKey, true);
+	}
+
+	/*** NavigableMap ***/
+
+	@Override
+	public Entry<Integer, String> lowerEntry(Integer key)
+	{
+		return entry(lower(key));
+	}
+
+	@Override
+	public Integer lowerKey(Integer key)
+	{
+		return key(lower(key), false);
+	}
+
+	@Override
+	public Entry<Integer, String> floorEntry(Integer key)
+	{
+		return entry(floor(key));
+	}
+
+	@Override
+	public Integer floorKey(Integer key)
+	{
+		return key(floor(key), false);
+	}
+
+	@Override
+	public Entry<Integer, String> ceilingEntry(Integer key)
+	{
+		return entry(ceiling(key));
+	}
+
+	@Override
+	public Integer ceilingKey(Integer key)
+	{
+		return key(ceiling(key), false);
+	}
+
+	@Override
+	public Entry<Integer, String> higherEntry(Integer key)
+	{
+		return entry(higher(key));
+	}
+
+	@Override
+	public Integer higherKey(Integer key)
+	{
+		return key(higher(key), false);
+	}
+
+	@Override
+	public Entry<Integer, String> firstEntry()
+	{
+		return entry(first());
+	}
+
+	@Override
+	public Entry<Integer, String> lastEntry()
+	{
+		return entry(last());
+	}
+
+	@Override
+	public Entry<Integer, String> pollFirstEntry()
+	{
+		return poll(first());
+	}
+
+	@Override
+	public Entry<Integer, String> pollLastEntry()
+	{
+		return poll(last());
+	}
+
+	@Override
+	public NavigableMap<Integer, String> descendingMap()
+	{
+		return new AVLTreeMap(tree, lo, hi, !descending);
+	}
+
+	@Override
+	public NavigableSet<Integer> navigableKeySet()
+	{
+		return new KeySet(this);
+	}
+
+	@Override
+	public NavigableSet<Integer> descendingKeySet()
+	{
+		return descendingMap().navigableKeySet();
+	}
+
+	/**
+	 * public NavigableMap<Integer, String> subMap(Integer fromKey, boolean fromInclusive, Integer toKey, boolean toInclusive)
+	 *
+	 * returns the view of the keys from fromKey to toKey in the order of this map
+	 *
+	 * precondition: fromKey does not come after toKey, and both are in the range of this map,
+	 * otherwise IllegalArgumentException is thrown
+	 */
+	@Override
+	public NavigableMap<Integer, String> subMap(Integer fromKey, boolean fromInclusive, Integer toKey, boolean toInclusive)
+	{
+		if (descending ? fromKey < toKey : fromKey > toKey) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		return tailMap(fromKey, fromInclusive).headMap(toKey, toInclusive);
+	}
+
+	@Override
+	public NavigableMap<Integer, String> headMap(Integer toKey, boolean inclusive)
+	{
+		long k = toKey;
+		if (descending) {
+			return view(inclusive ? k : k + 1, hi);
+		}
+		return view(lo, inclusive ? k : k - 1);
+	}
+
+	@Override
+	public NavigableMap<Integer, String> tailMap(Integer fromKey, boolean inclusive)
+	{
+		long k = fromKey;
+		if (descending) {
+			return view(lo, inclusive ? k : k - 1);
+		}
+		return view(inclusive ? k : k + 1, hi);
+	}
+
+	/**
+	 * public List<NavigableMap<Integer, String>> partition(int k)
+	 *
+	 * returns k views of consecutive ranges that together cover the range of this map, in the order of this map,
+	 * with numbers of keys that differ by at most 1 (the last views are empty when the map has fewer than k keys).
+	 * the tree is not changed: the bounds between the views are keys found with select when the method is called
+	 * (counting from the top of the range for a descending map),
+	 * so later changes to the tree fall into exactly one view but can unbalance them.
+	 * views that are only read can be handed to separate fork/join tasks
+	 *
+	 * precondition: k >= 1
+	 *
+	 * complexity is O(k log n): a select descent for each bound
+	 */
+	public List<NavigableMap<Integer, String>> partition(int k)
+	{
+		List<NavigableMap<Integer, String>> res = new ArrayList<NavigableMap<Integer, String>>(k);
+		int n = size();
+		int lower = lo <= 0 ? 0 : lo > Integer.MAX_VALUE ? tree.size() : tree.rank((int) lo);
+		int upper = lower + n; // the rank of the first key above the range
+		int done = 0;
+		long from = descending ? hi : lo;
+		boolean open = true; // false once a view reached the end of the range
+		for (int j = 0; j < k; j++) {
+			done += (n - done + k - j - 1) / (k - j); // ceil(keys left / views left)
+			if (!open) {
+				res.add(new AVLTreeMap(tree, 1, 0, descending));
+				continue;
+			}
+			boolean last = j == k - 1 || done == n;
+			if (descending) {
+				long to = last ? lo : tree.select(upper - done);
+				res.add(new AVLTreeMap(tree, to, from, true));
+				from = to - 1;
+			}
+			else {
+				long to = last ? hi : tree.select(lower + done) - 1L;
+				res.add(new AVLTreeMap(tree, from, to, false));
+				from = to + 1;
+			}
+			open = !last;
+		}
+		return res;
+	}
+
+	/*** helpers ***/
+
+	/**
+	 * private AVLTreeMap view(long newLo, long newHi)
+	 *
+	 * returns a view with the same direction and the inclusive bounds [newLo, newHi],
+	 * which must not be wider than the bounds of this map
+	 */
+	private AVLTreeMap view(long newLo, long newHi)
+	{
+		if (newLo < lo || newHi > hi) {
+			throw new IllegalArgumentException("key out of range");
+		}
+		return new AVLTreeMap(tree, newLo, newHi, descending);
+	}
+
+	private boolean inRange(long k)
+	{
+		return lo <= k && k <= hi;
+	}
+
+	/**
+	 * private int absCeiling(long k)
+	 *
+	 * returns the smallest key of the tree in the range of this map that is >= k, or NONE
+	 *
+	 * complexity is O(log n): one ceilingKey descent
+	 */
+	private int absCeiling(long k)
+	{
+		k = Math.max(Math.max(k, lo), 0);
+		if (k > hi || k > Integer.MAX_VALUE) {
+			return NONE;
+		}
+		int res = tree.ceilingKey((int) k);
+		return res == NONE || res > hi ? NONE : res;
+	}
+
+	/**
+	 * private int absFloor(long k)
+	 *
+	 * returns the largest key of the tree in the range of this map that is <= k, or NONE
+	 *
+	 * complexity is O(log n): one floorKey descent
+	 */
+	private int absFloor(long k)
+	{
+		k = Math.min(Math.min(k, hi), Integer.MAX_VALUE);
+		if (k < lo || k < 0) {
+			return NONE;
+		}
+		int res = tree.floorKey((int) k);
+		return res == NONE || res < lo ? NONE : res;
+	}
+
+	/* the navigation in the order of this map, reversed for a descending map */
+
+	private int first()
+	{
+		return descending ? absFloor(Long.MAX_VALUE) : absCeiling(Long.MIN_VALUE);
+	}
+
+	private int last()
+	{
+		return descending ? absCeiling(Long.MIN_VALUE) : absFloor(Long.MAX_VALUE);
+	}
+
+	private int ceiling(long k)
+	{
+		return descending ? absFloor(k) : absCeiling(k);
+	}
+
+	private int floor(long k)
+	{
+		return descending ? absCeiling(k) : absFloor(k);
+	}
+
+	private int higher(long k)
+	{
+		return descending ? absFloor(k - 1) : absCeiling(k + 1);
+	}
+
+	private int lower(long k)
+	{
+		return descending ? absCeiling(k + 1) : absFloor(k - 1);
+	}
+
+	private Entry<Integer, String> entry(int key)
+	{
+		return key == NONE ? null : new SimpleImmutableEntry<Integer, String>(key, tree.search(key));
+	}
+
+	private Entry<Integer, String> poll(int key)
+	{
+		Entry<Integer, String> res = entry(key);
+		if (res != null) {
+			tree.delete(key);
+		}
+		return res;
+	}
+
+	private static Integer key(int key, boolean required)
+	{
+		if (key == NONE) {
+			if (required) {
+				throw new NoSuchElementException();
+			}
+			return null;
+		}
+		return key;
+	}
+
+	/**
+	 * private abstract static class KeyIterator<T>
+	 *
+	 * iterates over the keys of a map in its order, with one higher() descent per step
+	 */
+	private abstract static class KeyIterator<T> implements Iterator<T>
+	{
+		private final AVLTreeMap map;
+		private int next;
+		private int lastReturned = NONE;
+
+		private KeyIterator(AVLTreeMap map)
+		{
+			this.map = map;
+			this.next = map.first();
+		}
+
+		abstract T value(int key);
+
+		public boolean hasNext()
+		{
+			return next != NONE;
+		}
+
+		public T next()
+		{
+			if (next == NONE) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = next;
+			next = map.higher(next);
+			return value(lastReturned);
+		}
+
+		public void remove()
+		{
+			if (lastReturned == NONE) {
+				throw new IllegalStateException();
+			}
+			map.tree.delete(lastReturned);
+			lastReturned = NONE;
+		}
+	}
+
+	/**
+	 * private static class TreeEntry
+	 *
+	 * an entry of the entry set iterator: setValue writes through to the tree, as in TreeMap,
+	 * so Map.replaceAll works too. the entries of firstEntry, floorEntry etc. are immutable snapshots
+	 */
+	private static class TreeEntry implements Entry<Integer, String>
+	{
+		private final AVLTree tree;
+		private final int key;
+		private String value;
+
+		private TreeEntry(AVLTree tree, int key, String value)
+		{
+			this.tree = tree;
+			this.key = key;
+			this.value = value;
+		}
+
+		public Integer getKey()
+		{
+			return key;
+		}
+
+		public String getValue()
+		{
+			return value;
+		}
+
+		public String setValue(String value)
+		{
+			tree.put(key, value); //first, so an info the tree rejects leaves the entry unchanged
+			String old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			return Integer.valueOf(key).equals(e.getKey()) && Objects.equals(value, e.getValue());
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return key ^ Objects.hashCode(value);
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + "=" + value;
+		}
+	}
+
+	/**
+	 * private static class KeySet
+	 *
+	 * the NavigableSet view of the keys of a map
+	 */
+	private static class KeySet extends AbstractSet<Integer> implements NavigableSet<Integer>
+	{
+		private final AVLTreeMap map;
+
+		private KeySet(AVLTreeMap map)
+		{
+			this.map = map;
+		}
+
+		public Iterator<Integer> iterator()
+		{
+			return new KeyIterator<Integer>(map) {
+				Integer value(int key) {
+					return key;
+				}
+			};
+		}
+
+		public Iterator<Integer> descendingIterator()
+		{
+			return descendingSet().iterator();
+		}
+
+		public int size()
+		{
+			return map.size();
+		}
+
+		public boolean isEmpty()
+		{
+			return map.isEmpty();
+		}
+
+		public boolean contains(Object o)
+		{
+			return map.containsKey(o);
+		}
+
+		public boolean remove(Object o)
+		{
+			if (!map.containsKey(o)) {
+				return false;
+			}
+			map.remove(o);
+			return true;
+		}
+
+		public void clear()
+		{
+			map.clear();
+		}
+
+		public Comparator<? super Integer> comparator()
+		{
+			return map.comparator();
+		}
+
+		public Integer first()
+		{
+			return map.firstKey();
+		}
+
+		public Integer last()
+		{
+			return map.lastKey();
+		}
+
+		public Integer lower(Integer e)
+		{
+			return map.lowerKey(e);
+		}
+
+		public Integer floor(Integer e)
+		{
+			return map.floorKey(e);
+		}
+
+		public Integer ceiling(Integer e)
+		{
+			return map.ceilingKey(e);
+		}
+
+		public Integer higher(Integer e)
+		{
+			return map.higherKey(e);
+		}
+
+		public Integer pollFirst()
+		{
+			Map.Entry<Integer, String> e = map.pollFirstEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		public Integer pollLast()
+		{
+			Map.Entry<Integer, String> e = map.pollLastEntry();
+			return e == null ? null : e.getKey();
+		}
+
+		public NavigableSet<Integer> descendingSet()
+		{
+			return map.descendingMap().navigableKeySet();
+		}
+
+		public NavigableSet<Integer> subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive)
+		{
+			return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+		}
+
+		public NavigableSet<Integer> headSet(Integer toElement, boolean inclusive)
+		{
+			return map.headMap(toElement, inclusive).navigableKeySet();
+		}
+
+		public NavigableSet<Integer> tailSet(Integer fromElement, boolean inclusive)
+		{
+			return map.tailMap(fromElement, inclusive).navigableKeySet();
+		}
+
+		public SortedSet<Integer> subSet(Integer fromElement, Integer toElement)
+		{
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		public SortedSet<Integer> headSet(Integer toElement)
+		{
+			return headSet(toElement, false);
+		}
+
+		public SortedSet<Integer> tailSet(Integer fromElement)
+		{
+			return tailSet(fromElement, true);
+		}
+	}
+}
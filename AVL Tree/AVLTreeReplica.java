@@ -0,0 +1,141 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+/**
+ * AVLTreeReplica
+ *
+ * A subscriber of an AVLTreeChangeFeed that applies the records to replica trees, one per tree id of the feed.
+ * it requests prefetch batches when it subscribes, and one more after applying each batch, so the feed never
+ * delivers more than prefetch batches ahead of the replica.
+ * the replica trees are changed on the delivery thread of the feed: getTree should be called from it
+ * (for example from onBatch) or after the feed is quiet (getApplied reached the published count)
+ */
+public class AVLTreeReplica implements Flow.Subscriber<AVLTreeChangeFeed.ChangeBatch>
+{
+	private final int prefetch;
+	private final Map<Integer, AVLTree> trees = new HashMap<Integer, AVLTree>();
+	private Flow.Subscription subscription;
+	private volatile long applied;
+	private volatile Throwable error;
+	private volatile boolean completed;
+
+	/**
+	 * public AVLTreeReplica(int prefetch)
+	 *
+	 * creates a replica with no trees
+	 *
+	 * precondition: prefetch > 0
+	 */
+	public AVLTreeReplica(int prefetch)
+	{
+		this.prefetch = prefetch;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription)
+	{
+		this.subscription = subscription;
+		subscription.request(prefetch);
+	}
+
+	/**
+	 * public void onNext(AVLTreeChangeFeed.ChangeBatch batch)
+	 *
+	 * applies the records of batch in order, and requests the next batch
+	 *
+	 * complexity is O(log n) per record, O(t.size()) for the PUT records of a tree t that is attached to the feed
+	 */
+	@Override
+	public void onNext(AVLTreeChangeFeed.ChangeBatch batch)
+	{
+		for (int i = 0; i < batch.size(); i++) {
+			apply(batch, i);
+		}
+		applied = batch.getSequence() + batch.size();
+		subscription.request(1);
+	}
+
+	@Override
+	public void onError(Throwable throwable)
+	{
+		error = throwable;
+	}
+
+	@Override
+	public void onComplete()
+	{
+		completed = true;
+	}
+
+	/**
+	 * public AVLTree getTree(int id)
+	 *
+	 * returns the replica of the tree with the given change feed id, null if there is none
+	 * (the tree was split or joined into another tree, or it was attached before the replica subscribed)
+	 */
+	public AVLTree getTree(int id)
+	{
+		return trees.get(id);
+	}
+
+	/**
+	 * public long getApplied()
+	 *
+	 * returns the position in the feed after the last applied record
+	 */
+	public long getApplied()
+	{
+		return applied;
+	}
+
+	/**
+	 * public Throwable getError()
+	 *
+	 * returns the error the feed ended the subscription with (the replica lagged too much), null if none
+	 */
+	public Throwable getError()
+	{
+		return error;
+	}
+
+	public boolean isCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * private void apply(AVLTreeChangeFeed.ChangeBatch batch, int i)
+	 *
+	 * applies record i of batch. records of trees that the replica does not have are skipped
+	 */
+	private void apply(AVLTreeChangeFeed.ChangeBatch batch, int i)
+	{
+		byte op = batch.getOp(i);
+		int id = batch.getTree(i);
+		if (op == AVLTreeChangeFeed.CREATE) {
+			trees.put(id, new AVLTree());
+			return;
+		}
+		AVLTree tree = trees.get(id);
+		if (tree == null) {
+			return;
+		}
+		if (op == AVLTreeChangeFeed.PUT) {
+			tree.put(batch.getKey(i), batch.getValue(i));
+		}
+		else if (op == AVLTreeChangeFeed.DELETE) {
+			tree.delete(batch.getKey(i));
+		}
+		else if (op == AVLTreeChangeFeed.SPLIT) {
+			AVLTree[] parts = tree.split(batch.getKey(i));
+			trees.remove(id);
+			trees.put(batch.getFirst(i), parts[0]);
+			trees.put(batch.getSecond(i), parts[1]);
+		}
+		else if (op == AVLTreeChangeFeed.JOIN) {
+			AVLTree other = trees.remove(batch.getFirst(i));
+			tree.join(tree.new AVLNode(batch.getKey(i), batch.getValue(i)), other == null ? new AVLTree() : other);
+		}
+	}
+}
@@ -0,0 +1,542 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * AVLTreeWAL
+ *
+ * An AVL tree whose mutations (insert, delete, split, join) are recorded in an append-only
+ * write-ahead log with group commit. The durable state is the last checkpoint snapshot
+ * plus the log written after it.
+ *
+ * Every log file and snapshot carries a generation number: tree-G.snapshot is the state of the
+ * tree when tree-G.wal was started. a checkpoint writes generation G+1 before removing G, so a crash
+ * at any point leaves a consistent pair to recover from.
+ *
+ */
+public class AVLTreeWAL {
+
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final byte SPLIT = 3;
+	private static final byte JOIN = 4;
+	private static final byte JOIN_ENTRY = 5;
+	private static final int HEADER_SIZE = 8; // payload length + crc
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final Path dir;
+	private final int batchOps;
+	private final long batchNanos;
+	private final ByteBuffer buf;
+	private final CRC32 crc;
+	private AVLTree tree;
+	private FileChannel log;
+	private long generation;
+	private int pendingOps;
+	private int recordStart;
+	private long firstPendingTime;
+
+	/**
+	 * private AVLTreeWAL(Path dir, int batchOps, long batchMillis)
+	 *
+	 * AVLTreeWAL constructor, use open() to create an instance
+	 */
+	private AVLTreeWAL(Path dir, int batchOps, long batchMillis)
+	{
+		this.dir = dir;
+		this.batchOps = Math.max(1, batchOps);
+		this.batchNanos = batchMillis * 1000000L;
+		this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.crc = new CRC32();
+	}
+
+	/**
+	 * public static AVLTreeWAL open(Path dir, int batchOps, long batchMillis)
+	 *
+	 * opens the logged tree stored in dir (creates an empty one if dir holds none) and recovers it:
+	 * loads the newest snapshot and replays its log on top of it. a torn record at the end of the
+	 * log is truncated.
+	 * a batch of logged operations is written and forced to disk once it holds batchOps operations, or once
+	 * batchMillis passed since its first operation (checked on the next operation, or by calling sync()).
+	 *
+	 * complexity is O(n + m) for n nodes in the snapshot and m log records
+	 */
+	public static AVLTreeWAL open(Path dir, int batchOps, long batchMillis) throws IOException
+	{
+		Files.createDirectories(dir);
+		AVLTreeWAL wal = new AVLTreeWAL(dir, batchOps, batchMillis);
+		wal.generation = latestSnapshotGeneration(dir);
+		Path snapshot = wal.snapshotPath(wal.generation);
+		if (Files.exists(snapshot)) {
+			try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+				wal.tree = AVLTree.readSnapshot(in);
+			}
+		}
+		else {
+			wal.tree = new AVLTree();
+		}
+		wal.log = FileChannel.open(wal.logPath(wal.generation), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		wal.forceDirectory(); // the log may have just been created
+		long valid = wal.replay();
+		wal.log.truncate(valid);
+		wal.log.position(valid);
+		wal.deleteOlderGenerations();
+		return wal;
+	}
+
+	/**
+	 * public AVLTree getTree()
+	 *
+	 * returns the logged tree. mutating it directly bypasses the log
+	 */
+	public AVLTree getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * logs and performs tree.insert(k, i), returns its result
+	 *
+	 * complexity is O(log n): AVLTree.insert, logging is O(1) amortized
+	 */
+	public int insert(int k, String i) throws IOException
+	{
+		byte[] value = encode(i);
+		beginRecord(INSERT, 8 + length(value));
+		buf.putInt(k);
+		putValue(value);
+		endRecord();
+		int res = tree.insert(k, i);
+		afterOperation();
+		return res;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * logs and performs tree.delete(k), returns its result
+	 *
+	 * complexity is O(log n): AVLTree.delete, logging is O(1) amortized
+	 */
+	public int delete(int k) throws IOException
+	{
+		beginRecord(DELETE, 4);
+		buf.putInt(k);
+		endRecord();
+		int res = tree.delete(k);
+		afterOperation();
+		return res;
+	}
+
+	/**
+	 * public AVLTree split(int x, boolean keepSmaller)
+	 *
+	 * logs and performs tree.split(x). the logged tree continues as the smaller part if keepSmaller
+	 * is true and as the larger part otherwise, the other part is returned (and is not logged).
+	 *
+	 * precondition: search(x) != null
+	 *
+	 * complexity is O(log n): AVLTree.split, logging is O(1) amortized
+	 */
+	public AVLTree split(int x, boolean keepSmaller) throws IOException
+	{
+		beginRecord(SPLIT, 5);
+		buf.putInt(x);
+		buf.put((byte) (keepSmaller ? 1 : 0));
+		endRecord();
+		AVLTree other = applySplit(x, keepSmaller);
+		afterOperation();
+		return other;
+	}
+
+	/**
+	 * public int join(int key, String value, AVLTree t)
+	 *
+	 * logs and performs tree.join(x, t) with a new node x holding key and value, returns its result.
+	 * the entries of t are logged as well, since they are not part of the durable state yet.
+	 *
+	 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+	 *
+	 * complexity is O(|t| + log n): t is written to the log
+	 */
+	public int join(int key, String value, AVLTree t) throws IOException
+	{
+		int[] keys = t.keysToArray();
+		String[] info = t.infoToArray();
+		byte[] encoded = encode(value);
+		beginRecord(JOIN, 12 + length(encoded));
+		buf.putInt(key);
+		putValue(encoded);
+		buf.putInt(keys.length);
+		endRecord();
+		for (int j = 0; j < keys.length; j++) {
+			encoded = encode(info[j]);
+			beginRecord(JOIN_ENTRY, 8 + length(encoded));
+			buf.putInt(keys[j]);
+			putValue(encoded);
+			endRecord();
+		}
+		int res = tree.join(tree.new AVLNode(key, value), t);
+		afterOperation();
+		return res;
+	}
+
+	/**
+	 * public void sync()
+	 *
+	 * writes the pending batch to the log with a single write and forces it to disk.
+	 * all operations performed before sync() returns are durable
+	 *
+	 * complexity is O(batch size)
+	 */
+	public void sync() throws IOException
+	{
+		writeBuffer();
+		if (pendingOps > 0) {
+			log.force(false);
+			pendingOps = 0;
+		}
+	}
+
+	/**
+	 * public void checkpoint()
+	 *
+	 * writes a snapshot of the tree as the next generation, starts an empty log for it and
+	 * removes the previous generation. the directory is forced after the snapshot is renamed and after
+	 * the new log is created, so the previous generation is removed only once the next one is durable
+	 *
+	 * complexity is O(n): writes the whole tree
+	 */
+	public void checkpoint() throws IOException
+	{
+		sync();
+		long next = generation + 1;
+		Path tmp = dir.resolve("tree-" + next + ".snapshot.tmp");
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			tree.writeSnapshot(out);
+			out.force(true);
+		}
+		Files.move(tmp, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		forceDirectory(); // the rename is durable only once the directory is
+		log.close();
+		generation = next;
+		log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		forceDirectory(); // so is the entry of the new log, before the old generation is removed
+		deleteOlderGenerations();
+	}
+
+	/**
+	 * public void close()
+	 *
+	 * syncs the pending batch and closes the log
+	 */
+	public void close() throws IOException
+	{
+		sync();
+		log.close();
+	}
+
+	/**
+	 * private AVLTree applySplit(int x, boolean keepSmaller)
+	 *
+	 * splits the tree at x, keeps one part and returns the other
+	 */
+	private AVLTree applySplit(int x, boolean keepSmaller)
+	{
+		AVLTree[] parts = tree.split(x);
+		tree = keepSmaller ? parts[0] : parts[1];
+		return keepSmaller ? parts[1] : parts[0];
+	}
+
+	/**
+	 * private void afterOperation()
+	 *
+	 * counts a logged operation and commits the batch if it reached its size or time bound
+	 *
+	 * complexity is O(1) amortized
+	 */
+	private void afterOperation() throws IOException
+	{
+		long now = System.nanoTime();
+		if (pendingOps == 0) {
+			firstPendingTime = now;
+		}
+		pendingOps++;
+		if (pendingOps >= batchOps || now - firstPendingTime >= batchNanos) {
+			sync();
+		}
+	}
+
+	/**
+	 * private void beginRecord(byte type, int bodyLength)
+	 *
+	 * reserves room for a record header and writes its type. flushes the buffer first if the record does not fit
+	 *
+	 * precondition: HEADER_SIZE + 1 + bodyLength <= BUFFER_SIZE
+	 */
+	private void beginRecord(byte type, int bodyLength) throws IOException
+	{
+		int recordLength = HEADER_SIZE + 1 + bodyLength;
+		if (recordLength > BUFFER_SIZE) {
+			throw new IOException("log record of " + recordLength + " bytes exceeds the log buffer");
+		}
+		if (buf.remaining() < recordLength) {
+			writeBuffer();
+		}
+		recordStart = buf.position();
+		buf.putInt(1 + bodyLength);
+		buf.putInt(0); // crc, filled by endRecord
+		buf.put(type);
+	}
+
+	/**
+	 * private void endRecord()
+	 *
+	 * computes the crc of the record started at recordStart and writes it to the record header
+	 *
+	 * complexity is O(record length)
+	 */
+	private void endRecord()
+	{
+		ByteBuffer payload = buf.duplicate();
+		payload.position(recordStart + HEADER_SIZE);
+		payload.limit(buf.position());
+		crc.reset();
+		crc.update(payload);
+		buf.putInt(recordStart + 4, (int) crc.getValue());
+	}
+
+	/**
+	 * private void writeBuffer()
+	 *
+	 * writes the buffered records to the log (a single write call unless the channel writes partially)
+	 *
+	 * complexity is O(buffered bytes)
+	 */
+	private void writeBuffer() throws IOException
+	{
+		buf.flip();
+		while (buf.hasRemaining()) {
+			log.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * private long replay()
+	 *
+	 * replays the records of the current log on the tree and returns the length of its valid prefix.
+	 * replay stops at the first torn or corrupted record, and a join whose entries are incomplete is discarded
+	 *
+	 * complexity is O(m) for m log records (plus the cost of the operations)
+	 */
+	private long replay() throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		ByteBuffer record = ByteBuffer.allocate(256);
+		long position = 0;
+		long valid = 0;
+		AVLTree joinTree = null;
+		int joinKey = 0;
+		String joinValue = null;
+		int joinRemaining = 0;
+		while (true) {
+			header.clear();
+			if (readFully(header, position) < HEADER_SIZE) {
+				break;
+			}
+			header.flip();
+			int length = header.getInt();
+			int checksum = header.getInt();
+			if (length <= 0 || length > BUFFER_SIZE) {
+				break;
+			}
+			if (record.capacity() < length) {
+				record = ByteBuffer.allocate(Math.max(length, 2 * record.capacity()));
+			}
+			record.clear();
+			record.limit(length);
+			if (readFully(record, position + HEADER_SIZE) < length) {
+				break;
+			}
+			record.flip();
+			crc.reset();
+			crc.update(record.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			position += HEADER_SIZE + length;
+			byte type = record.get();
+			if (joinRemaining > 0) {
+				if (type != JOIN_ENTRY) {
+					break;
+				}
+				int k = record.getInt();
+				joinTree.insert(k, getValue(record));
+				joinRemaining--;
+			}
+			else if (type == INSERT) {
+				int k = record.getInt();
+				tree.insert(k, getValue(record));
+			}
+			else if (type == DELETE) {
+				tree.delete(record.getInt());
+			}
+			else if (type == SPLIT) {
+				int x = record.getInt();
+				applySplit(x, record.get() == 1);
+			}
+			else if (type == JOIN) {
+				joinKey = record.getInt();
+				joinValue = getValue(record);
+				joinRemaining = record.getInt();
+				joinTree = new AVLTree();
+			}
+			else {
+				break;
+			}
+			if (type == JOIN || type == JOIN_ENTRY) {
+				if (joinRemaining == 0) {
+					tree.join(tree.new AVLNode(joinKey, joinValue), joinTree);
+					joinTree = null;
+					valid = position;
+				}
+			}
+			else {
+				valid = position;
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * private int readFully(ByteBuffer dst, long position)
+	 *
+	 * reads from the log at position until dst is full or the log ends, returns the number of bytes read
+	 */
+	private int readFully(ByteBuffer dst, long position) throws IOException
+	{
+		int total = 0;
+		while (dst.hasRemaining()) {
+			int read = log.read(dst, position + total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * private void putValue(byte[] value)
+	 *
+	 * writes a length-prefixed value to the buffer, length -1 stands for null
+	 */
+	private void putValue(byte[] value)
+	{
+		if (value == null) {
+			buf.putInt(-1);
+		}
+		else {
+			buf.putInt(value.length);
+			buf.put(value);
+		}
+	}
+
+	/**
+	 * private static String getValue(ByteBuffer record)
+	 *
+	 * reads a value written by putValue
+	 */
+	private static String getValue(ByteBuffer record)
+	{
+		int length = record.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String value = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return value;
+	}
+
+	private static byte[] encode(String value)
+	{
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int length(byte[] value)
+	{
+		return value == null ? 0 : value.length;
+	}
+
+	private Path snapshotPath(long generation)
+	{
+		return dir.resolve("tree-" + generation + ".snapshot");
+	}
+
+	private Path logPath(long generation)
+	{
+		return dir.resolve("tree-" + generation + ".wal");
+	}
+
+	/**
+	 * private static long latestSnapshotGeneration(Path dir)
+	 *
+	 * returns the highest generation that has a snapshot in dir, 0 if there is none
+	 */
+	private static long latestSnapshotGeneration(Path dir) throws IOException
+	{
+		long latest = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "tree-*.snapshot")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				long generation = Long.parseLong(name.substring(5, name.length() - ".snapshot".length()));
+				latest = Math.max(latest, generation);
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * private void forceDirectory()
+	 *
+	 * forces the entries of dir to disk. forcing a file does not make its creation or renaming durable,
+	 * so without this a crash could lose a new snapshot or log whose operations sync() already acknowledged
+	 */
+	private void forceDirectory() throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * private void deleteOlderGenerations()
+	 *
+	 * removes snapshots and logs of generations older than the current one
+	 */
+	private void deleteOlderGenerations() throws IOException
+	{
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "tree-*")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				int end = name.indexOf('.');
+				if (end > 5 && Long.parseLong(name.substring(5, end)) < generation) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * BlockedBloomFilter
+ *
+ * A Bloom filter over non negative integer keys, used by AVLTree to answer lookups of absent keys
+ * without descending the tree. the bits are split into blocks of 512 bits (one cache line): a key
+ * selects one block and sets all of its bits inside it, so a query reads a single cache line.
+ * mightContain never returns false for an added key, and returns true for an absent key with
+ * probability about getFalsePositiveRate() while no more than getCapacity() keys were added
+ * (a little above it, since the keys of a block are not spread over the whole filter).
+ * keys can not be removed: the owner rebuilds the filter when too many of the added keys are gone.
+ */
+public class BlockedBloomFilter
+{
+	private static final int WORDS_PER_BLOCK = 8;	// 8 longs = 512 bits
+	private static final int BLOCK_MASK = 64 * WORDS_PER_BLOCK - 1;
+	private static final int MAX_HASHES = 16;
+
+	private final long[] bits;
+	private final int numOfBlocks;
+	private final int numOfHashes;
+	private final int capacity;
+	private final double falsePositiveRate;
+	private int count;
+
+	/**
+	 * public BlockedBloomFilter(int capacity, double falsePositiveRate)
+	 *
+	 * creates an empty filter sized for capacity keys at the given false positive rate:
+	 * -ln(rate) / ln(2)^2 bits and ln(2) * bits hashes per key
+	 *
+	 * precondition: capacity > 0, 0 < falsePositiveRate < 1
+	 *
+	 * complexity is O(capacity * -log(falsePositiveRate))
+	 */
+	public BlockedBloomFilter(int capacity, double falsePositiveRate)
+	{
+		double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long numOfBits = (long) Math.ceil(capacity * bitsPerKey);
+		this.numOfBlocks = (int) Math.max(1, (numOfBits + BLOCK_MASK) / (BLOCK_MASK + 1));
+		this.numOfHashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+		this.bits = new long[numOfBlocks * WORDS_PER_BLOCK];
+		this.capacity = capacity;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * public void add(int key)
+	 *
+	 * adds key to the filter
+	 *
+	 * complexity is O(getNumOfHashes())
+	 */
+	public void add(int key)
+	{
+		long h = mix(key);
+		int base = block(h);
+		int a = (int) h;
+		int b = stride(h);
+		for (int i = 0; i < numOfHashes; i++) {
+			int bit = (a + i * b) & BLOCK_MASK;
+			bits[base + (bit >>> 6)] |= 1L << bit;
+		}
+		count++;
+	}
+
+	/**
+	 * public boolean mightContain(int key)
+	 *
+	 * returns false if key was certainly not added to the filter, true if it may have been
+	 *
+	 * complexity is O(getNumOfHashes()), reading one block
+	 */
+	public boolean mightContain(int key)
+	{
+		long h = mix(key);
+		int base = block(h);
+		int a = (int) h;
+		int b = stride(h);
+		for (int i = 0; i < numOfHashes; i++) {
+			int bit = (a + i * b) & BLOCK_MASK;
+			if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * public boolean canUnion(BlockedBloomFilter other)
+	 *
+	 * returns true if other has the same size and hashes, so its keys can be added with union
+	 */
+	public boolean canUnion(BlockedBloomFilter other)
+	{
+		return other.numOfBlocks == numOfBlocks && other.numOfHashes == numOfHashes;
+	}
+
+	/**
+	 * public void union(BlockedBloomFilter other)
+	 *
+	 * adds all the keys of other to the filter
+	 *
+	 * precondition: canUnion(other)
+	 *
+	 * complexity is O(number of blocks)
+	 */
+	public void union(BlockedBloomFilter other)
+	{
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] |= other.bits[i];
+		}
+		count += other.count;
+	}
+
+	/**
+	 * public int getCount()
+	 *
+	 * returns the number of keys added to the filter, counting a key once per add
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	public int getNumOfHashes() {
+		return numOfHashes;
+	}
+
+	/**
+	 * private int block(long h)
+	 *
+	 * returns the index in bits of the first word of the block of the hash h,
+	 * using the high 32 bits of h (multiply-shift instead of a modulo)
+	 */
+	private int block(long h)
+	{
+		return (int) (((h >>> 32) * numOfBlocks) >>> 32) * WORDS_PER_BLOCK;
+	}
+
+	/**
+	 * private static int stride(long h)
+	 *
+	 * returns the odd step between the bits of the hash h inside its block. it is taken from
+	 * a multiple of h, since the high bits of h already chose the block
+	 */
+	private static int stride(long h)
+	{
+		return (int) ((h * 0x9E3779B97F4A7C15L) >>> 32) | 1;
+	}
+
+	/**
+	 * private static long mix(int key)
+	 *
+	 * returns a 64 bit hash of key (the finalizer of MurmurHash3), consecutive keys get unrelated hashes
+	 */
+	private static long mix(int key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE1A85EC9L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/**
+ * IntHashIndex
+ *
+ * An open addressing hash map from non negative int keys to values, used by AVLTree to find the node
+ * of a key without descending the tree. the keys and the values are kept in two parallel arrays
+ * (no entry objects, no boxing) and collisions are resolved by linear probing, at a load factor of
+ * at most 1/2, so a lookup usually reads a single slot. removal shifts the following entries back
+ * instead of leaving tombstones, so lookups of absent keys stay short after many removals.
+ */
+public class IntHashIndex<V>
+{
+	private static final int EMPTY = -1;
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * public IntHashIndex(int expectedSize)
+	 *
+	 * creates an empty index that holds expectedSize keys without growing
+	 *
+	 * complexity is O(expectedSize)
+	 */
+	public IntHashIndex(int expectedSize)
+	{
+		allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2));
+	}
+
+	/**
+	 * public V get(int key)
+	 *
+	 * returns the value of key, null if key is not in the index
+	 *
+	 * complexity is O(1) expected
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key)
+	{
+		for (int i = slot(key); ; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key) {
+				return (V) values[i];
+			}
+			if (k == EMPTY) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * public void put(int key, V value)
+	 *
+	 * sets the value of key, adding key if it is not in the index
+	 *
+	 * precondition: key >= 0
+	 *
+	 * complexity is O(1) amortized
+	 */
+	public void put(int key, V value)
+	{
+		int i = slot(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (2 * size > keys.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * public void remove(int key)
+	 *
+	 * removes key from the index, if it is there. the entries that follow it in its probe run
+	 * are moved back, so that no entry is separated from its home slot by an empty slot
+	 *
+	 * complexity is O(1) expected
+	 */
+	public void remove(int key)
+	{
+		if (key < 0) { // never added, and -1 would match an empty slot
+			return;
+		}
+		int i = slot(key);
+		while (keys[i] != key) {
+			if (keys[i] == EMPTY) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (keys[j] == EMPTY) {
+				break;
+			}
+			int home = slot(keys[j]);
+			boolean stays = i <= j ? i < home && home <= j : i < home || home <= j; // home is cyclically in (i, j]
+			if (!stays) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = EMPTY;
+		values[i] = null;
+		size--;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of keys in the index
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * private void grow()
+	 *
+	 * doubles the number of slots and reinserts all the entries
+	 *
+	 * complexity is O(size)
+	 */
+	private void grow()
+	{
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int j = slot(oldKeys[i]);
+				while (keys[j] != EMPTY) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * private void allocate(int capacity)
+	 *
+	 * replaces the arrays with empty arrays of capacity slots
+	 *
+	 * precondition: capacity is a power of 2
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * private int slot(int key)
+	 *
+	 * returns the home slot of key (Fibonacci hashing, so consecutive keys do not fill consecutive slots)
+	 */
+	private int slot(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
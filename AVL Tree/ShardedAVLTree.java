@@ -0,0 +1,455 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ShardedAVLTree
+ *
+ * A thread safe map from non negative integer keys to info, range-partitioned over several
+ * independent AVL trees (shards). Every shard owns a contiguous key range and has its own lock,
+ * so writers to different shards do not block each other, and readers of a shard do not block each other.
+ *
+ * Shards are rebalanced by size: a shard that grows above maxShardSize is cut in two at its median
+ * with split, and when a shard drops below minShardSize, neighbours whose total size is at most
+ * maxShardSize / 2 are merged with join.
+ * The shards are published as an immutable array through a volatile field, so finding the shard of a key
+ * takes no lock. Rebalancing locks every shard, publishes a new array of new shards and retires the old ones;
+ * an operation that locked a retired shard retries with the new array.
+ *
+ */
+public class ShardedAVLTree {
+
+	private final ReentrantLock rebalanceLock = new ReentrantLock();
+	private final int maxShardSize;
+	private final int minShardSize;
+	private volatile Shard[] shards; // never modified, rebalance replaces the array
+
+	/**
+	 * public ShardedAVLTree(int numOfShards, int maxShardSize)
+	 *
+	 * ShardedAVLTree constructor, creates numOfShards empty shards that divide the key range [0, Integer.MAX_VALUE]
+	 * into equal parts. shards are split above maxShardSize keys, and merged when one drops below maxShardSize / 4 keys
+	 *
+	 * precondition: numOfShards >= 1, maxShardSize >= 2
+	 *
+	 * Complexity: O(numOfShards)
+	 */
+	public ShardedAVLTree(int numOfShards, int maxShardSize)
+	{
+		this.maxShardSize = maxShardSize;
+		this.minShardSize = maxShardSize / 4;
+		Shard[] initial = new Shard[numOfShards];
+		int width = Integer.MAX_VALUE / numOfShards;
+		for (int i = 0; i < numOfShards; i++) {
+			initial[i] = new Shard(i * width, new AVLTree());
+		}
+		this.shards = initial;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of the item with key k, or null if there is none
+	 *
+	 * complexity is O(log n + log(numOfShards))
+	 */
+	public String search(int k)
+	{
+		while (true) {
+			Shard shard = shardOf(k);
+			long stamp = shard.lock.readLock(); //shared: the shard trees have no filter, so search does not change them
+			try {
+				if (!shard.retired) {
+					return shard.tree.search(k);
+				}
+			}
+			finally {
+				shard.lock.unlockRead(stamp);
+			}
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item into the shard that owns k, returns the result of AVLTree.insert.
+	 * if the shard grows above maxShardSize, the shards are rebalanced
+	 *
+	 * complexity is O(log n + log(numOfShards)), plus the cost of rebalance() when it is triggered
+	 */
+	public int insert(int k, String i)
+	{
+		while (true) {
+			Shard shard = shardOf(k);
+			int res;
+			boolean overflow;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired) { //rebalanced since shardOf, retry with the new shards
+					continue;
+				}
+				res = shard.tree.insert(k, i);
+				overflow = shard.tree.size() > maxShardSize;
+			}
+			finally {
+				shard.lock.unlockWrite(stamp);
+			}
+			if (overflow) {
+				rebalance();
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k from the shard that owns it, returns the result of AVLTree.delete.
+	 * when the shard drops below minShardSize, the shards are rebalanced (once per crossing)
+	 *
+	 * complexity is O(log n + log(numOfShards)), plus the cost of rebalance() when it is triggered
+	 */
+	public int delete(int k)
+	{
+		while (true) {
+			Shard shard = shardOf(k);
+			int res;
+			boolean underflow;
+			long stamp = shard.lock.writeLock();
+			try {
+				if (shard.retired) { //rebalanced since shardOf, retry with the new shards
+					continue;
+				}
+				res = shard.tree.delete(k);
+				underflow = res != -1 && shard.tree.size() == minShardSize - 1 && shards.length > 1;
+			}
+			finally {
+				shard.lock.unlockWrite(stamp);
+			}
+			if (underflow) {
+				rebalance();
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of items in all shards
+	 *
+	 * complexity is O(numOfShards)
+	 */
+	public int size()
+	{
+		while (true) {
+			Shard[] current = shards;
+			int res = 0;
+			boolean retired = false;
+			for (Shard shard : current) {
+				long stamp = shard.lock.readLock();
+				try {
+					retired = shard.retired; //its tree may already belong to a new shard, under another lock
+					if (!retired) {
+						res += shard.tree.size();
+					}
+				}
+				finally {
+					shard.lock.unlockRead(stamp);
+				}
+				if (retired) {
+					break;
+				}
+			}
+			if (!retired) {
+				return res;
+			}
+		}
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * returns the number of keys smaller than k in all shards
+	 *
+	 * complexity is O(log n + numOfShards): the sizes of the shards before the owner of k are summed
+	 */
+	public int rank(int k)
+	{
+		while (true) {
+			Shard[] current = shards;
+			int res = 0;
+			boolean retired = false;
+			int index = shardIndex(current, k);
+			for (int i = 0; i <= index; i++) {
+				Shard shard = current[i];
+				long stamp = shard.lock.readLock();
+				try {
+					retired = shard.retired;
+					if (!retired) {
+						res += i < index ? shard.tree.size() : shard.tree.rank(k);
+					}
+				}
+				finally {
+					shard.lock.unlockRead(stamp);
+				}
+				if (retired) {
+					break;
+				}
+			}
+			if (!retired) {
+				return res;
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * returns a sorted array of the keys of all shards. every shard is copied under its own lock,
+	 * so the result is consistent per shard
+	 *
+	 * complexity is O(n)
+	 */
+	public int[] keysToArray()
+	{
+		while (true) {
+			Shard[] current = shards;
+			int[][] parts = new int[current.length][];
+			int total = 0;
+			boolean retired = false;
+			for (int i = 0; i < current.length; i++) {
+				long stamp = current[i].lock.readLock();
+				try {
+					retired = current[i].retired;
+					if (!retired) {
+						parts[i] = current[i].tree.keysToArray();
+					}
+				}
+				finally {
+					current[i].lock.unlockRead(stamp);
+				}
+				if (retired) {
+					break;
+				}
+				total += parts[i].length;
+			}
+			if (retired) {
+				continue;
+			}
+			int[] res = new int[total];
+			int pos = 0;
+			for (int[] part : parts) {
+				System.arraycopy(part, 0, res, pos, part.length);
+				pos += part.length;
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * returns the info of all shards sorted by their keys, see keysToArray()
+	 *
+	 * complexity is O(n)
+	 */
+	public String[] infoToArray()
+	{
+		while (true) {
+			Shard[] current = shards;
+			String[][] parts = new String[current.length][];
+			int total = 0;
+			boolean retired = false;
+			for (int i = 0; i < current.length; i++) {
+				long stamp = current[i].lock.readLock();
+				try {
+					retired = current[i].retired;
+					if (!retired) {
+						parts[i] = current[i].tree.infoToArray();
+					}
+				}
+				finally {
+					current[i].lock.unlockRead(stamp);
+				}
+				if (retired) {
+					break;
+				}
+				total += parts[i].length;
+			}
+			if (retired) {
+				continue;
+			}
+			String[] res = new String[total];
+			int pos = 0;
+			for (String[] part : parts) {
+				System.arraycopy(part, 0, res, pos, part.length);
+				pos += part.length;
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * public int numOfShards()
+	 *
+	 * returns the current number of shards
+	 */
+	public int numOfShards()
+	{
+		return shards.length;
+	}
+
+	/**
+	 * public void rebalance()
+	 *
+	 * splits every shard larger than maxShardSize at its median key, and merges neighbouring shards
+	 * whose total size is at most maxShardSize / 2. every shard is locked while it runs, and the result
+	 * is published as new shards, so operations that wait for an old shard retry with the new ones
+	 *
+	 * complexity is O(numOfShards * log n): every split and join is O(log n)
+	 */
+	public void rebalance()
+	{
+		rebalanceLock.lock();
+		try {
+			Shard[] current = shards;
+			long[] stamps = new long[current.length];
+			for (int i = 0; i < current.length; i++) {
+				stamps[i] = current[i].lock.writeLock();
+			}
+			try {
+				ArrayList<Shard> split = new ArrayList<Shard>(current.length);
+				for (Shard shard : current) {
+					splitInto(shard, split);
+				}
+				ArrayList<Shard> merged = new ArrayList<Shard>(split.size());
+				for (Shard shard : split) {
+					Shard last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+					if (last != null && last.tree.size() + shard.tree.size() <= maxShardSize / 2) {
+						mergeInto(last, shard);
+					}
+					else {
+						merged.add(shard);
+					}
+				}
+				Shard[] next = new Shard[merged.size()];
+				for (int i = 0; i < next.length; i++) { //new locks: every old shard is retired, even if its tree is kept
+					next[i] = new Shard(merged.get(i).lo, merged.get(i).tree);
+				}
+				for (Shard shard : current) {
+					shard.retired = true;
+				}
+				shards = next;
+			}
+			finally {
+				for (int i = 0; i < current.length; i++) {
+					current[i].lock.unlockWrite(stamps[i]);
+				}
+			}
+		}
+		finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/**
+	 * private void splitInto(Shard shard, ArrayList<Shard> res)
+	 *
+	 * appends shard to res, cut at its median as long as it is larger than maxShardSize.
+	 * split removes the median key from both parts, so it is inserted back into the larger part,
+	 * which becomes the owner of the range starting at the median
+	 *
+	 * complexity is O(log n) per produced shard
+	 */
+	private void splitInto(Shard shard, ArrayList<Shard> res)
+	{
+		if (shard.tree.size() <= maxShardSize) {
+			res.add(shard);
+			return;
+		}
+		AVLTree tree = shard.tree;
+		int median = tree.select(tree.size() / 2);
+		String info = tree.search(median);
+		AVLTree[] parts = tree.split(median);
+		parts[1].insert(median, info);
+		splitInto(new Shard(shard.lo, parts[0]), res);
+		splitInto(new Shard(median, parts[1]), res);
+	}
+
+	/**
+	 * private static void mergeInto(Shard left, Shard right)
+	 *
+	 * moves the items of right into left, which then owns both ranges.
+	 * the minimum of right is removed and used as the join node
+	 *
+	 * complexity is O(log n)
+	 */
+	private static void mergeInto(Shard left, Shard right)
+	{
+		AVLTree tree = right.tree;
+		if (tree.empty()) {
+			return;
+		}
+		int minKey = tree.select(0);
+		String minInfo = tree.min();
+		tree.delete(minKey);
+		left.tree.join(left.tree.new AVLNode(minKey, minInfo), tree);
+	}
+
+	/**
+	 * private Shard shardOf(int k)
+	 *
+	 * returns the shard whose range contains k in the current shards. the shard may be retired by
+	 * the time the caller locks it, so the caller checks it under its lock
+	 */
+	private Shard shardOf(int k)
+	{
+		Shard[] current = shards;
+		return current[shardIndex(current, k)];
+	}
+
+	/**
+	 * private static int shardIndex(Shard[] shards, int k)
+	 *
+	 * returns the index of the last shard in shards whose lower bound is at most k (0 for negative keys)
+	 *
+	 * complexity is O(log(numOfShards)): binary search over the lower bounds
+	 */
+	private static int shardIndex(Shard[] shards, int k)
+	{
+		int lo = 0;
+		int hi = shards.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (shards[mid].lo <= k) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * private static class Shard
+	 *
+	 * a key range starting at lo (up to the lo of the next shard) and the tree holding its items.
+	 * searches take the lock shared, changes take it exclusively. retired is set under the lock
+	 * when rebalance replaces the shard
+	 */
+	private static class Shard
+	{
+		private final int lo;
+		private final AVLTree tree;
+		private final StampedLock lock = new StampedLock();
+		private boolean retired;
+
+		private Shard(int lo, AVLTree tree)
+		{
+			this.lo = lo;
+			this.tree = tree;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * DuplicateKeyStress
+ *
+ * A randomized check and timing run of FibonacciHeap when keys repeat heavily, like jobs that share a timestamp.
+ * every workload draws its keys from a few distinct values.
+ * the check replays a mix of insert, decreaseKey, delete and deleteMin on a java.util.PriorityQueue and compares
+ * the minimum and the size after every operation (with eager and lazy delete), and compares kMin with a sort.
+ * the timing run repeats a dijkstra like mix for growing n and reports the time per operation divided by log n,
+ * the links per deleteMin and the cuts per decreaseKey, which stay flat when the amortized bounds hold.
+ * an IllegalStateException is thrown on the first mismatch.
+ *
+ * usage: java DuplicateKeyStress [n] [rounds]
+ */
+public class DuplicateKeyStress
+{
+	private static final int WARMUP = 3;
+	private static final int CHECK_OPS = 20000;
+	private static final int[] DISTINCT = {1, 2, 16, 256};
+
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		Random random = new Random(31);
+		for (int distinct : DISTINCT) {
+			check(new FibonacciHeap(), random, distinct);
+			check(new FibonacciHeap(true, 0.5), random, distinct);
+			checkKMin(random, distinct);
+		}
+		System.out.println("check passed");
+		System.out.printf("%-10s %10s %12s %16s %14s %14s%n", "n", "distinct", "ns/op", "ns/op/log2(n)", "links/delMin", "cuts/decKey");
+		for (int distinct : DISTINCT) {
+			for (int size = Math.max(1, n >> 6); size <= n; size *= 4) {
+				long best = Long.MAX_VALUE;
+				long links = 0;
+				long cuts = 0;
+				for (int r = 0; r < WARMUP + rounds; r++) {
+					int linksBefore = FibonacciHeap.totalLinks();
+					int cutsBefore = FibonacciHeap.totalCuts();
+					long time = mix(new Random(r), size, distinct);
+					if (r >= WARMUP && time < best) {
+						best = time;
+						links = FibonacciHeap.totalLinks() - linksBefore;
+						cuts = FibonacciHeap.totalCuts() - cutsBefore;
+					}
+				}
+				double perOp = (double) best / (4L * size); // an insert, two decreaseKeys and a deleteMin per node
+				double log = Math.log(Math.max(2, size)) / Math.log(2);
+				System.out.printf("%-10d %10d %12.1f %16.2f %14.2f %14.2f%n",
+						size, distinct, perOp, perOp / log, (double) links / size, (double) cuts / (2L * size));
+			}
+		}
+	}
+
+	/**
+	 * private static void check(FibonacciHeap heap, Random random, int distinct)
+	 *
+	 * replays CHECK_OPS random operations with keys in [0, distinct) on heap and on a PriorityQueue,
+	 * comparing the minimum and the number of live keys after every operation, then drains both.
+	 * the operations include insertAll followed by heapify, which links tombstones among tied roots
+	 */
+	private static void check(FibonacciHeap heap, Random random, int distinct)
+	{
+		PriorityQueue<Integer> expected = new PriorityQueue<Integer>();
+		FibonacciHeap.HeapNode[] nodes = new FibonacciHeap.HeapNode[CHECK_OPS];
+		int live = 0;
+		for (int op = 0; op < CHECK_OPS; op++) {
+			int choice = random.nextInt(11);
+			if (choice < 4 || live == 0) {
+				int key = random.nextInt(distinct);
+				nodes[live++] = heap.insert(key);
+				expected.add(key);
+			}
+			else if (choice == 10) {
+				int[] keys = new int[Math.min(1 + random.nextInt(8), CHECK_OPS - live)];
+				for (int i = 0; i < keys.length; i++) {
+					keys[i] = random.nextInt(distinct);
+					expected.add(keys[i]);
+				}
+				FibonacciHeap.HeapNode[] inserted = heap.insertAll(keys);
+				System.arraycopy(inserted, 0, nodes, live, inserted.length);
+				live += inserted.length;
+				heap.heapify();
+			}
+			else if (choice < 6) {
+				FibonacciHeap.HeapNode min = heap.findMin();
+				heap.deleteMin();
+				expected.poll();
+				live = remove(nodes, live, min);
+			}
+			else if (choice < 9) {
+				FibonacciHeap.HeapNode x = nodes[random.nextInt(live)];
+				int delta = random.nextInt(2);
+				expected.remove(x.getKey());
+				heap.decreaseKey(x, delta);
+				expected.add(x.getKey());
+			}
+			else {
+				int i = random.nextInt(live);
+				FibonacciHeap.HeapNode x = nodes[i];
+				nodes[i] = nodes[--live];
+				expected.remove(x.getKey());
+				heap.delete(x);
+			}
+			compare(heap, expected);
+		}
+		while (!expected.isEmpty()) {
+			compare(heap, expected);
+			heap.deleteMin();
+			expected.poll();
+		}
+		if (!heap.isEmpty()) {
+			throw new IllegalStateException("heap not empty after drain");
+		}
+	}
+
+	/**
+	 * private static void checkKMin(Random random, int distinct)
+	 *
+	 * builds a single binomial tree of 2^10 keys in [0, distinct) (1025 inserts and one deleteMin)
+	 * and compares kMin for every k with a sort of the keys
+	 */
+	private static void checkKMin(Random random, int distinct)
+	{
+		FibonacciHeap heap = new FibonacciHeap();
+		int[] keys = new int[1025];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextInt(distinct);
+			heap.insert(keys[i]);
+		}
+		heap.deleteMin();
+		Arrays.sort(keys);
+		for (int k = 1; k < keys.length; k++) {
+			if (!Arrays.equals(FibonacciHeap.kMin(heap, k), Arrays.copyOfRange(keys, 1, k + 1))) {
+				throw new IllegalStateException("kMin(" + k + ") with " + distinct + " distinct keys");
+			}
+		}
+	}
+
+	/**
+	 * private static long mix(Random random, int n, int distinct)
+	 *
+	 * inserts n keys taken from distinct values, then until the heap is empty decreases two random live keys
+	 * to a smaller one of the values and deletes the minimum. returns the time it took, in nanoseconds
+	 */
+	private static long mix(Random random, int n, int distinct)
+	{
+		FibonacciHeap heap = new FibonacciHeap();
+		FibonacciHeap.HeapNode[] nodes = new FibonacciHeap.HeapNode[n];
+		IdentityHashMap<FibonacciHeap.HeapNode, Integer> index = new IdentityHashMap<FibonacciHeap.HeapNode, Integer>(2 * n);
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			nodes[i] = heap.insert(1000 * (distinct + random.nextInt(distinct)));
+			index.put(nodes[i], i);
+		}
+		int live = n;
+		long sum = 0;
+		while (live > 0) {
+			for (int j = 0; j < 2; j++) {
+				FibonacciHeap.HeapNode x = nodes[random.nextInt(live)];
+				heap.decreaseKey(x, 1000 * random.nextInt(2));
+			}
+			FibonacciHeap.HeapNode min = heap.findMin();
+			sum += min.getKey();
+			heap.deleteMin();
+			int i = index.remove(min);
+			nodes[i] = nodes[--live];
+			if (i < live) {
+				index.put(nodes[i], i);
+			}
+		}
+		long time = System.nanoTime() - start;
+		if (sum == 42) {	//keeps the results alive
+			System.out.print("");
+		}
+		return time;
+	}
+
+	/**
+	 * private static int remove(FibonacciHeap.HeapNode[] nodes, int live, FibonacciHeap.HeapNode x)
+	 *
+	 * removes x from the first live places of nodes (found by identity) and returns the new number of live nodes
+	 */
+	private static int remove(FibonacciHeap.HeapNode[] nodes, int live, FibonacciHeap.HeapNode x)
+	{
+		for (int i = 0; i < live; i++) {
+			if (nodes[i] == x) {
+				nodes[i] = nodes[live - 1];
+				return live - 1;
+			}
+		}
+		throw new IllegalStateException("deleted minimum was not a live node");
+	}
+
+	private static void compare(FibonacciHeap heap, PriorityQueue<Integer> expected)
+	{
+		if (heap.size() != expected.size()) {
+			throw new IllegalStateException("size " + heap.size() + ", expected " + expected.size());
+		}
+		if (!expected.isEmpty() && heap.findMin().getKey() != expected.peek()) {
+			throw new IllegalStateException("min " + heap.findMin().getKey() + ", expected " + expected.peek());
+		}
+	}
+}
@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ExternalPriorityQueue
+ *
+ * A priority queue over integers that can hold far more keys than fit in memory.
+ * new keys go into an in-memory FibonacciHeap (the buffer). when the buffer grows above bufferSize keys,
+ * it is emptied in sorted order with deleteMinBatch into a run file, read and written sequentially in blocks
+ * of blockSize bytes. the heads of all runs are kept in a loser tree, so the minimum is the smaller of the
+ * buffer minimum and the loser tree winner.
+ *
+ * runs are levelled: once fanIn runs of the same level exist, they are merged into one run of the next level,
+ * so the number of open runs stays O(fanIn * log(n / bufferSize)).
+ * run files are created in dir and removed when they are merged, emptied or closed.
+ *
+ */
+public class ExternalPriorityQueue {
+
+	private static final int KEY_BYTES = 4;
+
+	private final Path dir;
+	private final int bufferSize;
+	private final int blockSize;
+	private final int fanIn;
+	private final int[] spillChunk;
+	private FibonacciHeap buffer = new FibonacciHeap();
+	private ArrayList<Run> runs = new ArrayList<Run>();
+	private LoserTree tree;
+	private long size;
+	private int nextRunId;
+
+	/**
+	 * public ExternalPriorityQueue(Path dir, int bufferSize, int blockSize, int fanIn)
+	 *
+	 * ExternalPriorityQueue constructor, creates an empty queue whose run files are created in dir
+	 *
+	 * precondition: dir exists, bufferSize > 0, blockSize >= 4 is a multiple of 4, fanIn >= 2
+	 */
+	public ExternalPriorityQueue(Path dir, int bufferSize, int blockSize, int fanIn)
+	{
+		this.dir = dir;
+		this.bufferSize = bufferSize;
+		this.blockSize = blockSize;
+		this.fanIn = fanIn;
+		this.spillChunk = new int[blockSize / KEY_BYTES];
+		this.tree = new LoserTree(runs);
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * returns true if and only if the queue is empty
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * public long size()
+	 *
+	 * returns the number of keys in the buffer and in all runs
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * public int numOfRuns()
+	 *
+	 * returns the number of runs on disk
+	 */
+	public int numOfRuns()
+	{
+		return runs.size();
+	}
+
+	/**
+	 * public void insert(int key)
+	 *
+	 * inserts key into the buffer, and spills the buffer to a new run if it grew above bufferSize
+	 *
+	 * amortized complexity is O(log(bufferSize)) plus the sequential I/O of spilling and merging
+	 */
+	public void insert(int key) throws IOException
+	{
+		buffer.insert(key);
+		size++;
+		if (buffer.size() > bufferSize) {
+			spill();
+		}
+	}
+
+	/**
+	 * public int findMin()
+	 *
+	 * returns the minimal key
+	 *
+	 * precondition: !isEmpty()
+	 *
+	 * Complexity is O(1)
+	 */
+	public int findMin()
+	{
+		if (buffer.isEmpty() || (!tree.isEmpty() && tree.min() < buffer.findMin().getKey())) {
+			return tree.min();
+		}
+		return buffer.findMin().getKey();
+	}
+
+	/**
+	 * public int deleteMin()
+	 *
+	 * deletes the minimal key and returns it. a run that becomes empty is closed and removed
+	 *
+	 * precondition: !isEmpty()
+	 *
+	 * complexity is O(log(bufferSize)) amortized for a key of the buffer,
+	 * O(log(numOfRuns)) for a key of a run plus one block read every blockSize / 4 keys of that run
+	 */
+	public int deleteMin() throws IOException
+	{
+		int res;
+		if (buffer.isEmpty() || (!tree.isEmpty() && tree.min() < buffer.findMin().getKey())) {
+			res = tree.min();
+			Run run = tree.advance();
+			if (run != null) {
+				run.close();
+				runs.remove(run);
+				tree = new LoserTree(runs);
+			}
+		}
+		else {
+			res = buffer.findMin().getKey();
+			buffer.deleteMin();
+		}
+		size--;
+		return res;
+	}
+
+	/**
+	 * public void close()
+	 *
+	 * closes and removes all run files, the queue is empty afterwards
+	 */
+	public void close() throws IOException
+	{
+		IOException failure = null;
+		for (Run run : runs) {
+			try {
+				run.close();
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+		runs = new ArrayList<Run>();
+		tree = new LoserTree(runs);
+		buffer = new FibonacciHeap();
+		size = 0;
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * private void spill()
+	 *
+	 * writes the buffer in sorted order into a new run of level 0, then merges full levels
+	 *
+	 * Complexity is O(bufferSize * log(bufferSize)) plus the sequential write of the run
+	 */
+	private void spill() throws IOException
+	{
+		Path path = newRunPath();
+		long count = 0;
+		try (RunWriter writer = new RunWriter(path, blockSize)) {
+			int n;
+			while ((n = buffer.deleteMinBatch(spillChunk)) > 0) {
+				for (int i = 0; i < n; i++) {
+					writer.write(spillChunk[i]);
+				}
+				count += n;
+			}
+		}
+		buffer = new FibonacciHeap();
+		runs.add(new Run(path, count, 0, blockSize));
+		mergeLevels();
+		tree = new LoserTree(runs);
+	}
+
+	/**
+	 * private void mergeLevels()
+	 *
+	 * while some level holds fanIn runs, merges them with a loser tree into one run of the next level.
+	 * the runs may be partially consumed, only their remaining keys are merged
+	 *
+	 * Complexity is O(k log(fanIn)) per merge of k keys, with sequential reads and writes
+	 */
+	private void mergeLevels() throws IOException
+	{
+		for (int level = 0; ; level++) {
+			ArrayList<Run> same = new ArrayList<Run>();
+			for (Run run : runs) {
+				if (run.level == level) {
+					same.add(run);
+				}
+			}
+			if (same.isEmpty()) {
+				return;
+			}
+			if (same.size() < fanIn) {
+				continue;
+			}
+			Path path = newRunPath();
+			long count = 0;
+			LoserTree merge = new LoserTree(same);
+			try (RunWriter writer = new RunWriter(path, blockSize)) {
+				while (!merge.isEmpty()) {
+					writer.write(merge.min());
+					merge.advance();
+					count++;
+				}
+			}
+			for (Run run : same) {
+				run.close();
+			}
+			runs.removeAll(same);
+			runs.add(new Run(path, count, level + 1, blockSize));
+		}
+	}
+
+	private Path newRunPath()
+	{
+		return dir.resolve("run-" + (nextRunId++) + ".bin");
+	}
+
+	/**
+	 * private static class Run
+	 *
+	 * a sorted run file read sequentially block by block. the file is deleted when the run is closed
+	 */
+	private static class Run
+	{
+		private final FileChannel channel;
+		private final ByteBuffer block;
+		private final int level;
+		private long remaining;
+		private int head;
+
+		private Run(Path path, long count, int level, int blockSize) throws IOException
+		{
+			this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+			this.block = ByteBuffer.allocateDirect(blockSize);
+			this.block.limit(0);
+			this.level = level;
+			this.remaining = count;
+			advance();
+		}
+
+		private boolean isEmpty()
+		{
+			return remaining < 0;
+		}
+
+		/**
+		 * private void advance()
+		 *
+		 * moves head to the next key of the run, reading the next block when the current one is used up.
+		 * after the last key remaining becomes negative
+		 */
+		private void advance() throws IOException
+		{
+			remaining--;
+			if (remaining < 0) {
+				return;
+			}
+			if (!block.hasRemaining()) {
+				block.clear();
+				while (block.position() < KEY_BYTES) {
+					if (channel.read(block) < 0) {
+						throw new IOException("run file ended before its last key");
+					}
+				}
+				while (block.position() % KEY_BYTES != 0) {	//a read may stop in the middle of a key
+					if (channel.read(block) < 0) {
+						throw new IOException("run file ended in the middle of a key");
+					}
+				}
+				block.flip();
+			}
+			head = block.getInt();
+		}
+
+		private void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * private static class RunWriter
+	 *
+	 * writes keys to a new run file through a block buffer
+	 */
+	private static class RunWriter implements AutoCloseable
+	{
+		private final FileChannel channel;
+		private final ByteBuffer block;
+
+		private RunWriter(Path path, int blockSize) throws IOException
+		{
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			this.block = ByteBuffer.allocateDirect(blockSize);
+		}
+
+		private void write(int key) throws IOException
+		{
+			if (!block.hasRemaining()) {
+				flush();
+			}
+			block.putInt(key);
+		}
+
+		private void flush() throws IOException
+		{
+			block.flip();
+			while (block.hasRemaining()) {
+				channel.write(block);
+			}
+			block.clear();
+		}
+
+		public void close() throws IOException
+		{
+			try {
+				flush();
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * private static class LoserTree
+	 *
+	 * a tournament tree over the heads of k runs. every internal node keeps the run that lost the match
+	 * played there and tree[0] keeps the overall winner, so replacing the winner's head replays only
+	 * the log(k) matches on its path. an empty run loses every match
+	 */
+	private static class LoserTree
+	{
+		private final Run[] leaves;
+		private final int[] tree;
+
+		/**
+		 * private LoserTree(ArrayList<Run> runs)
+		 *
+		 * builds the tree over runs, every internal node keeps the first run that reaches it until a second one plays it
+		 *
+		 * Complexity is O(k)
+		 */
+		private LoserTree(ArrayList<Run> runs)
+		{
+			this.leaves = runs.toArray(new Run[runs.size()]);
+			this.tree = new int[Math.max(1, leaves.length)];
+			Arrays.fill(tree, -1);
+			for (int i = 0; i < leaves.length; i++) {
+				replay(i);
+			}
+		}
+
+		private boolean isEmpty()
+		{
+			return leaves.length == 0 || leaves[tree[0]].isEmpty();
+		}
+
+		/**
+		 * private int min()
+		 *
+		 * returns the head of the winning run
+		 *
+		 * precondition: !isEmpty()
+		 */
+		private int min()
+		{
+			return leaves[tree[0]].head;
+		}
+
+		/**
+		 * private Run advance()
+		 *
+		 * moves the winning run to its next key and replays its path.
+		 * returns the winning run if it became empty, null otherwise
+		 *
+		 * Complexity is O(log k) plus a block read every blockSize / 4 keys
+		 */
+		private Run advance() throws IOException
+		{
+			int winner = tree[0];
+			leaves[winner].advance();
+			replay(winner);
+			return leaves[winner].isEmpty() ? leaves[winner] : null;
+		}
+
+		private void replay(int s)
+		{
+			for (int t = (s + leaves.length) >>> 1; t > 0; t >>>= 1) {
+				if (tree[t] == -1) {	//only while building
+					tree[t] = s;
+					return;
+				}
+				if (beats(tree[t], s)) {
+					int temp = s;
+					s = tree[t];
+					tree[t] = temp;
+				}
+			}
+			tree[0] = s;
+		}
+
+		private boolean beats(int a, int b)
+		{
+			Run x = leaves[a];
+			Run y = leaves[b];
+			if (x.isEmpty()) {
+				return false;
+			}
+			return y.isEmpty() || x.head < y.head;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ExternalQueueBenchmark
+ *
+ * A check and throughput run of ExternalPriorityQueue with far more keys than fit in memory.
+ * the check interleaves inserts and deleteMins on a queue of a few buffers (so partially consumed runs are merged)
+ * and compares every deleted key with a sort of the same keys.
+ * the throughput run inserts n = multiple * (maximal heap size / 4) random keys, multiple times the keys that
+ * would fit in the heap of the jvm (-Xmx), then drains them, and reports keys per second and MB per second of keys
+ * for both phases, with the number of runs on disk after the inserts. n keys do not fit in memory, so the drain is
+ * checked against the sort of the inserted keys by its order and by the count and a sum of 64 bit hashes of the keys,
+ * which are the same for the drain and the sorted keys.
+ * an IllegalStateException is thrown on the first mismatch.
+ *
+ * usage: java -Xmx64m ExternalQueueBenchmark [multiple] [bufferSize] [blockSize] [fanIn] [dir]
+ */
+public class ExternalQueueBenchmark
+{
+	private static final int CHECK_BUFFERS = 40;
+
+	public static void main(String[] args) throws IOException
+	{
+		int multiple = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : (int) Math.min(1 << 20, Runtime.getRuntime().maxMemory() / 512);
+		int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 16;
+		int fanIn = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+		Path dir = args.length > 4 ? Paths.get(args[4]) : Files.createTempDirectory("external-queue");
+		long n = multiple * (Runtime.getRuntime().maxMemory() / 4);
+		try {
+			check(dir, Math.max(1, bufferSize / 64), blockSize, fanIn, new Random(38));
+			System.out.println("check passed");
+			System.out.printf("n = %d keys (%d MB, %dx the heap of %d MB), buffer %d keys, block %d bytes, fan in %d%n",
+					n, (4 * n) >> 20, multiple, Runtime.getRuntime().maxMemory() >> 20, bufferSize, blockSize, fanIn);
+			run(dir, n, bufferSize, blockSize, fanIn, new Random(38));
+		}
+		finally {
+			if (args.length <= 4) {
+				Files.deleteIfExists(dir);
+			}
+		}
+	}
+
+	/**
+	 * private static void check(Path dir, int bufferSize, int blockSize, int fanIn, Random random)
+	 *
+	 * inserts CHECK_BUFFERS * bufferSize random keys in rounds, deleting a random part of the keys after every round,
+	 * and compares every deleted key and the final drain with a sort of the keys that are in the queue
+	 */
+	private static void check(Path dir, int bufferSize, int blockSize, int fanIn, Random random) throws IOException
+	{
+		ExternalPriorityQueue queue = new ExternalPriorityQueue(dir, bufferSize, blockSize, fanIn);
+		int[] expected = new int[CHECK_BUFFERS * bufferSize];
+		int from = 0; // expected[from, to) are the keys in the queue, sorted after every round
+		int to = 0;
+		try {
+			while (to < expected.length) {
+				int count = Math.min(expected.length - to, 1 + random.nextInt(3 * bufferSize));
+				for (int i = 0; i < count; i++) {
+					int key = random.nextInt(1 << (1 + random.nextInt(30)));
+					queue.insert(key);
+					expected[to++] = key;
+				}
+				Arrays.sort(expected, from, to);
+				int deletes = random.nextInt(to - from + 1) / 2;
+				for (int i = 0; i < deletes; i++) {
+					compare(queue.deleteMin(), expected[from++], from);
+				}
+				if (queue.size() != to - from) {
+					throw new IllegalStateException("size " + queue.size() + ", expected " + (to - from));
+				}
+			}
+			while (!queue.isEmpty()) {
+				compare(queue.deleteMin(), expected[from++], from);
+			}
+			if (from != to) {
+				throw new IllegalStateException("queue empty after " + from + " of " + to + " keys");
+			}
+		}
+		finally {
+			queue.close();
+		}
+	}
+
+	/**
+	 * private static void run(Path dir, long n, int bufferSize, int blockSize, int fanIn, Random random)
+	 *
+	 * inserts n random keys, then deletes them all, timing both phases. the keys are not kept:
+	 * their count and hash sum are compared with those of the drained keys, which must not decrease
+	 */
+	private static void run(Path dir, long n, int bufferSize, int blockSize, int fanIn, Random random) throws IOException
+	{
+		ExternalPriorityQueue queue = new ExternalPriorityQueue(dir, bufferSize, blockSize, fanIn);
+		try {
+			long hashes = 0;
+			long start = System.nanoTime();
+			for (long i = 0; i < n; i++) {
+				int key = random.nextInt() >>> 1;
+				hashes += hash(key);
+				queue.insert(key);
+			}
+			long insertTime = System.nanoTime() - start;
+			int runs = queue.numOfRuns();
+			long drained = 0;
+			int last = Integer.MIN_VALUE;
+			start = System.nanoTime();
+			while (!queue.isEmpty()) {
+				int key = queue.deleteMin();
+				if (key < last) {
+					throw new IllegalStateException("key " + key + " after " + last + " at " + drained);
+				}
+				last = key;
+				hashes -= hash(key);
+				drained++;
+			}
+			long drainTime = System.nanoTime() - start;
+			if (drained != n || hashes != 0) {
+				throw new IllegalStateException("drained " + drained + " of " + n + " keys, hash difference " + hashes);
+			}
+			System.out.printf("%-8s %14s %10s %8s%n", "phase", "keys/s", "MB/s", "runs");
+			System.out.printf("%-8s %14.0f %10.1f %8d%n", "insert", n / (insertTime / 1e9), 4 * n / (insertTime / 1e9) / (1 << 20), runs);
+			System.out.printf("%-8s %14.0f %10.1f %8d%n", "drain", n / (drainTime / 1e9), 4 * n / (drainTime / 1e9) / (1 << 20), queue.numOfRuns());
+		}
+		finally {
+			queue.close();
+		}
+	}
+
+	private static void compare(int key, int expected, int position)
+	{
+		if (key != expected) {
+			throw new IllegalStateException("deleteMin " + position + " returned " + key + ", expected " + expected);
+		}
+	}
+
+	/**
+	 * private static long hash(int key)
+	 *
+	 * the finalizer of MurmurHash3, so that different multisets of keys have different sums of hashes
+	 * except by chance
+	 */
+	private static long hash(int key)
+	{
+		long h = key + 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE1A85EC9L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
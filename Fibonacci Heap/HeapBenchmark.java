@@ -0,0 +1,313 @@
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * HeapBenchmark
+ *
+ * A shared timing harness for the MeldablePriorityQueue implementations. every workload is written once
+ * against the interface and run on FibonacciHeap, PairingHeap, RankPairingHeap and RadixHeap with the same seed.
+ * each measurement is repeated after warm up rounds and the best time is reported, in milliseconds.
+ * RadixHeap only runs the monotone workloads (sort, delete and dijkstra), the others are shown as -.
+ * last, FibonacciHeap consumers that drain in batches are timed: a queue of n keys repeatedly receives a batch
+ * of new keys and gives back its batch smallest ones, with repeated deleteMin and with deleteMinBatch,
+ * reporting nanoseconds per drained key.
+ *
+ * usage: java HeapBenchmark [n] [rounds]
+ */
+public class HeapBenchmark
+{
+	private static final int WARMUP = 3;
+
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		System.out.printf("%-16s %12s %12s %12s %12s %12s%n", "heap", "sort", "decreaseKey", "delete", "meld", "dijkstra");
+		for (String name : new String[] {"FibonacciHeap", "PairingHeap", "RankPairingHeap", "RadixHeap"}) {
+			System.out.printf("%-16s", name);
+			for (int workload = 0; workload < 5; workload++) {
+				if (name.equals("RadixHeap") && (workload == 1 || workload == 3)) {
+					System.out.printf(" %12s", "-");
+					continue;
+				}
+				long best = Long.MAX_VALUE;
+				for (int r = 0; r < WARMUP + rounds; r++) {
+					long time = run(name, workload, n);
+					if (r >= WARMUP) {
+						best = Math.min(best, time);
+					}
+				}
+				System.out.printf(" %12.2f", best / 1e6);
+			}
+			System.out.println();
+		}
+		System.out.printf("%n%-16s %12s %12s %12s%n", "drain (ns/key)", "deleteMin", "batch", "speedup");
+		for (int batch = 64; batch <= 512; batch *= 2) {
+			long bestSingle = Long.MAX_VALUE;
+			long bestBatch = Long.MAX_VALUE;
+			for (int r = 0; r < WARMUP + rounds; r++) {
+				long single = drain(new Random(r), n, batch, false);
+				long batched = drain(new Random(r), n, batch, true);
+				if (r >= WARMUP) {
+					bestSingle = Math.min(bestSingle, single);
+					bestBatch = Math.min(bestBatch, batched);
+				}
+			}
+			System.out.printf("%-16s %12.1f %12.1f %11.2fx%n", "batch " + batch,
+					(double) bestSingle / n, (double) bestBatch / n, (double) bestSingle / bestBatch);
+		}
+	}
+
+	/**
+	 * private static long drain(Random random, int n, int batch, boolean batched)
+	 *
+	 * fills a FibonacciHeap with n random keys, then n / batch times inserts batch random keys and removes
+	 * the batch smallest keys, with deleteMinBatch if batched and with batch deleteMin calls otherwise.
+	 * returns the time of the removals only, in nanoseconds (the same keys are drawn in both modes)
+	 */
+	private static long drain(Random random, int n, int batch, boolean batched)
+	{
+		FibonacciHeap heap = new FibonacciHeap();
+		for (int i = 0; i < n; i++) {
+			heap.insert(random.nextInt(Integer.MAX_VALUE));
+		}
+		int[] out = new int[batch];
+		long time = 0;
+		long sum = 0;
+		for (int round = 0; round < n / batch; round++) {
+			for (int i = 0; i < batch; i++) {
+				heap.insert(random.nextInt(Integer.MAX_VALUE));
+			}
+			long start = System.nanoTime();
+			if (batched) {
+				heap.deleteMinBatch(out);
+			}
+			else {
+				for (int i = 0; i < batch; i++) {
+					out[i] = heap.findMin().getKey();
+					heap.deleteMin();
+				}
+			}
+			time += System.nanoTime() - start;
+			sum += out[batch - 1];
+		}
+		if (sum == 42) {	//keeps the results alive
+			System.out.print("");
+		}
+		return time;
+	}
+
+	/**
+	 * private static long run(String name, int workload, int n)
+	 *
+	 * runs one workload on a fresh heap of the given kind and returns the time it took, in nanoseconds
+	 */
+	private static long run(String name, int workload, int n)
+	{
+		switch (name) {
+		case "FibonacciHeap":
+			return run(new FibonacciHeap(), new FibonacciHeap(), workload, n);
+		case "PairingHeap":
+			return run(new PairingHeap(), new PairingHeap(), workload, n);
+		case "RadixHeap":
+			return run(new RadixHeap(), new RadixHeap(), workload, n);
+		default:
+			return run(new RankPairingHeap(), new RankPairingHeap(), workload, n);
+		}
+	}
+
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long run(Q heap, Q heap2, int workload, int n)
+	{
+		Random random = new Random(workload);
+		long start = System.nanoTime();
+		long check;
+		switch (workload) {
+		case 0:
+			check = sort(heap, random, n);
+			break;
+		case 1:
+			check = decreaseKeys(heap, random, n);
+			break;
+		case 2:
+			check = deletes(heap, random, n);
+			break;
+		case 3:
+			check = melds(heap, heap2, random, n);
+			break;
+		default:
+			check = dijkstra(heap, random, n);
+		}
+		long time = System.nanoTime() - start;
+		if (check == 42) {	//keeps the results alive
+			System.out.print("");
+		}
+		return time;
+	}
+
+	/**
+	 * private static long sort(Q heap, Random random, int n)
+	 *
+	 * inserts n random keys and removes them all with deleteMin
+	 */
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long sort(Q heap, Random random, int n)
+	{
+		for (int i = 0; i < n; i++) {
+			heap.insert(random.nextInt(Integer.MAX_VALUE));
+		}
+		long sum = 0;
+		while (!heap.isEmpty()) {
+			sum += heap.findMin().getKey();
+			heap.deleteMin();
+		}
+		return sum;
+	}
+
+	/**
+	 * private static long decreaseKeys(Q heap, Random random, int n)
+	 *
+	 * a dijkstra like mix: n inserts, then rounds of 4 decreaseKeys on random live nodes per deleteMin.
+	 * the live nodes are kept in a prefix of nodes, index maps a node to its place there
+	 */
+	@SuppressWarnings("unchecked")
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long decreaseKeys(Q heap, Random random, int n)
+	{
+		N[] nodes = (N[]) new MeldablePriorityQueue.Node[n];
+		IdentityHashMap<N, Integer> index = new IdentityHashMap<N, Integer>(2 * n);
+		int live = n;
+		for (int i = 0; i < n; i++) {
+			nodes[i] = heap.insert(1 + random.nextInt(Integer.MAX_VALUE - 1));
+			index.put(nodes[i], i);
+		}
+		long sum = 0;
+		while (live > 0) {
+			for (int j = 0; j < 4; j++) {
+				N x = nodes[random.nextInt(live)];
+				heap.decreaseKey(x, random.nextInt(x.getKey() / 2 + 1));
+			}
+			N removed = heap.findMin();
+			sum += removed.getKey();
+			heap.deleteMin();
+			int i = index.remove(removed);
+			nodes[i] = nodes[--live];
+			if (i < live) {
+				index.put(nodes[i], i);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * private static long deletes(Q heap, Random random, int n)
+	 *
+	 * inserts n random keys and deletes them all in random order with delete
+	 */
+	@SuppressWarnings("unchecked")
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long deletes(Q heap, Random random, int n)
+	{
+		N[] nodes = (N[]) new MeldablePriorityQueue.Node[n];
+		for (int i = 0; i < n; i++) {
+			nodes[i] = heap.insert(random.nextInt(Integer.MAX_VALUE));
+		}
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			N temp = nodes[i];
+			nodes[i] = nodes[j];
+			nodes[j] = temp;
+		}
+		long sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += nodes[i].getKey();
+			heap.delete(nodes[i]);
+		}
+		return sum + heap.size();
+	}
+
+	/**
+	 * private static long melds(Q heap, Q heap2, Random random, int n)
+	 *
+	 * alternately fills heap2 with 64 keys and melds it into heap, removing one minimum per meld
+	 */
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long melds(Q heap, Q heap2, Random random, int n)
+	{
+		long sum = 0;
+		for (int i = 0; i < n / 64; i++) {
+			for (int j = 0; j < 64; j++) {
+				heap2.insert(random.nextInt(Integer.MAX_VALUE));
+			}
+			heap.meld(heap2);
+			heap2 = newLike(heap2);
+			sum += heap.findMin().getKey();
+			heap.deleteMin();
+		}
+		return sum + heap.size();
+	}
+
+	/**
+	 * private static long dijkstra(Q heap, Random random, int n)
+	 *
+	 * shortest paths from vertex 0 in a random graph of n vertices and 4n edges with lengths in [1, 1000].
+	 * a vertex is inserted when it is first reached and its key is decreased on every shorter path
+	 */
+	@SuppressWarnings("unchecked")
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> long dijkstra(Q heap, Random random, int n)
+	{
+		int m = 4 * n;
+		int[] start = new int[n + 1];
+		int[] target = new int[m];
+		int[] length = new int[m];
+		for (int i = 0; i < m; i++) {
+			start[random.nextInt(n) + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			start[v + 1] += start[v];
+		}
+		for (int i = 0; i < m; i++) {
+			target[i] = random.nextInt(n);
+			length[i] = 1 + random.nextInt(1000);
+		}
+		N[] nodes = (N[]) new MeldablePriorityQueue.Node[n];
+		boolean[] done = new boolean[n];
+		IdentityHashMap<N, Integer> vertex = new IdentityHashMap<N, Integer>(2 * n);
+		nodes[0] = heap.insert(0);
+		vertex.put(nodes[0], 0);
+		long sum = 0;
+		while (!heap.isEmpty()) {
+			N min = heap.findMin();
+			int u = vertex.get(min);
+			int dist = min.getKey();
+			heap.deleteMin();
+			done[u] = true;
+			sum += dist;
+			for (int e = start[u]; e < start[u + 1]; e++) {
+				int v = target[e];
+				if (done[v]) {
+					continue;
+				}
+				int newDist = dist + length[e];
+				if (nodes[v] == null) {
+					nodes[v] = heap.insert(newDist);
+					vertex.put(nodes[v], v);
+				}
+				else if (newDist < nodes[v].getKey()) {
+					heap.decreaseKey(nodes[v], nodes[v].getKey() - newDist);
+				}
+			}
+		}
+		return sum;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node> Q newLike(Q heap)
+	{
+		if (heap instanceof FibonacciHeap) {
+			return (Q) new FibonacciHeap();
+		}
+		if (heap instanceof PairingHeap) {
+			return (Q) new PairingHeap();
+		}
+		if (heap instanceof RadixHeap) {
+			return (Q) new RadixHeap();
+		}
+		return (Q) new RankPairingHeap();
+	}
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+
+/**
+ * HeapProfiler
+ *
+ * An opt-in recorder of the shape of a FibonacciHeap, attached with FibonacciHeap.setProfiler.
+ * every event is an O(1) increment of a histogram bucket, without allocation:
+ * - the number of roots at each deleteMin, before consolidate (log2 buckets: bucket i counts values in [2^(i-1), 2^i))
+ * - the rank of every root after consolidate (bucket i counts rank i)
+ * - the number of cuts of each decreaseKey, including the cascade (bucket i counts i cuts)
+ * - the marked nodes ratio at each deleteMin (bucket i counts ratios in [i/10, (i+1)/10), bucket 10 counts 1)
+ * the metrics are pulled with snapshot(). like the heap, a profiler is not thread safe: the snapshot is exact
+ * when it is taken on the thread that uses the heap, and may miss concurrent increments otherwise.
+ * one profiler may be shared by several heaps of the same thread.
+ */
+public class HeapProfiler
+{
+	private static final int NUM_OF_BUCKETS = 33;
+	private static final int NUM_OF_RATIO_BUCKETS = 11;
+
+	private final long[] rootsAtDeleteMin = new long[NUM_OF_BUCKETS];
+	private final long[] ranksAfterConsolidate = new long[NUM_OF_BUCKETS];
+	private final long[] cutsPerDecreaseKey = new long[NUM_OF_BUCKETS];
+	private final long[] markedRatio = new long[NUM_OF_RATIO_BUCKETS];
+	private long deleteMins;
+	private long consolidates;
+	private long decreaseKeys;
+
+	/**
+	 * public void recordDeleteMin(int numOfRoots, int markedNodes, int size)
+	 *
+	 * records a deleteMin that found numOfRoots roots to consolidate, in a heap of size nodes of which markedNodes are marked
+	 *
+	 * Complexity is O(1)
+	 */
+	public void recordDeleteMin(int numOfRoots, int markedNodes, int size)
+	{
+		deleteMins++;
+		rootsAtDeleteMin[log2Bucket(numOfRoots)]++;
+		markedRatio[size == 0 ? 0 : (int) (10L * markedNodes / size)]++;
+	}
+
+	/**
+	 * public void recordConsolidate()
+	 *
+	 * records the start of a consolidate, whose roots are then passed to recordRank
+	 *
+	 * Complexity is O(1)
+	 */
+	public void recordConsolidate()
+	{
+		consolidates++;
+	}
+
+	/**
+	 * public void recordRank(int rank)
+	 *
+	 * records a root of the given rank after consolidate
+	 *
+	 * Complexity is O(1)
+	 */
+	public void recordRank(int rank)
+	{
+		ranksAfterConsolidate[Math.min(rank, NUM_OF_BUCKETS - 1)]++;
+	}
+
+	/**
+	 * public void recordDecreaseKey(int cuts)
+	 *
+	 * records a decreaseKey that made cuts cuts: 0 if x stayed in place, 1 + the length of the cascade otherwise
+	 *
+	 * Complexity is O(1)
+	 */
+	public void recordDecreaseKey(int cuts)
+	{
+		decreaseKeys++;
+		cutsPerDecreaseKey[Math.min(cuts, NUM_OF_BUCKETS - 1)]++;
+	}
+
+	/**
+	 * public Snapshot snapshot()
+	 *
+	 * returns a copy of all the histograms and counters
+	 *
+	 * Complexity is O(1): the histograms have a constant number of buckets
+	 */
+	public Snapshot snapshot()
+	{
+		return new Snapshot(this);
+	}
+
+	/**
+	 * public void reset()
+	 *
+	 * zeroes all the histograms and counters
+	 *
+	 * Complexity is O(1)
+	 */
+	public void reset()
+	{
+		Arrays.fill(rootsAtDeleteMin, 0);
+		Arrays.fill(ranksAfterConsolidate, 0);
+		Arrays.fill(cutsPerDecreaseKey, 0);
+		Arrays.fill(markedRatio, 0);
+		deleteMins = 0;
+		consolidates = 0;
+		decreaseKeys = 0;
+	}
+
+	/**
+	 * private static int log2Bucket(int value)
+	 *
+	 * returns 0 for value 0, otherwise 1 + the index of the highest bit of value
+	 */
+	private static int log2Bucket(int value)
+	{
+		return value <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * public static class Snapshot
+	 *
+	 * an immutable copy of the metrics of a HeapProfiler, see the bucket layout in the class comment
+	 */
+	public static class Snapshot
+	{
+		private final long[] rootsAtDeleteMin;
+		private final long[] ranksAfterConsolidate;
+		private final long[] cutsPerDecreaseKey;
+		private final long[] markedRatio;
+		private final long deleteMins;
+		private final long consolidates;
+		private final long decreaseKeys;
+
+		private Snapshot(HeapProfiler profiler)
+		{
+			rootsAtDeleteMin = profiler.rootsAtDeleteMin.clone();
+			ranksAfterConsolidate = profiler.ranksAfterConsolidate.clone();
+			cutsPerDecreaseKey = profiler.cutsPerDecreaseKey.clone();
+			markedRatio = profiler.markedRatio.clone();
+			deleteMins = profiler.deleteMins;
+			consolidates = profiler.consolidates;
+			decreaseKeys = profiler.decreaseKeys;
+		}
+
+		public long[] getRootsAtDeleteMin() {
+			return rootsAtDeleteMin.clone();
+		}
+
+		public long[] getRanksAfterConsolidate() {
+			return ranksAfterConsolidate.clone();
+		}
+
+		public long[] getCutsPerDecreaseKey() {
+			return cutsPerDecreaseKey.clone();
+		}
+
+		public long[] getMarkedRatio() {
+			return markedRatio.clone();
+		}
+
+		public long getDeleteMins() {
+			return deleteMins;
+		}
+
+		public long getConsolidates() {
+			return consolidates;
+		}
+
+		public long getDecreaseKeys() {
+			return decreaseKeys;
+		}
+
+		/**
+		 * public static int percentileBucket(long[] histogram, double p)
+		 *
+		 * returns the index of the bucket that holds the p-th fraction of the recorded values (0 < p <= 1),
+		 * -1 if the histogram is empty
+		 *
+		 * Complexity is O(number of buckets)
+		 */
+		public static int percentileBucket(long[] histogram, double p)
+		{
+			long total = 0;
+			for (long count : histogram) {
+				total += count;
+			}
+			if (total == 0) {
+				return -1;
+			}
+			long rank = (long) Math.ceil(p * total);
+			long seen = 0;
+			for (int i = 0; i < histogram.length; i++) {
+				seen += histogram[i];
+				if (seen >= rank) {
+					return i;
+				}
+			}
+			return histogram.length - 1;
+		}
+	}
+}
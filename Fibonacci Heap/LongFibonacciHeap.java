@@ -0,0 +1,568 @@
+/**
+ * LongFibonacciHeap
+ *
+ * An implementation of fibonacci heap with long priorities and a payload of type V in every node.
+ * priorities are kept as primitive longs, so no boxing happens on any operation.
+ * priorities may repeat: nodes are always told apart by identity, never by priority.
+ */
+public class LongFibonacciHeap<V>
+{
+	private HeapNode min;
+	private HeapNode first;
+	private int size;
+	private int numOfRoots;
+	private int markedNodes;
+
+	/**
+	 * public LongFibonacciHeap()
+	 *
+	 * LongFibonacciHeap constructor, creates an empty heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public LongFibonacciHeap() {
+		size = 0;
+		numOfRoots = 0;
+		min = null;
+		markedNodes = 0;
+		first = null;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * The method returns true if and only if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return first == null;
+	}
+
+	/**
+	 * public HeapNode insert(long key, V value)
+	 *
+	 * creates a node which contains the given priority and payload, and inserts it into the heap.
+	 *
+	 * Complexity is O(1): inserts new node as tree with rank 0.
+	 */
+	public HeapNode insert(long key, V value)
+	{
+		HeapNode newNode = new HeapNode(key, value);
+		if (isEmpty()) {
+			min = newNode;
+		}
+		else {
+			insertRoots(first.getPrev(), first, newNode);
+			if (newNode.getKey() < min.getKey()) {
+				min = newNode;
+			}
+		}
+		first = newNode;
+		numOfRoots++;
+		size++;
+		return newNode;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * deletes the node containing the minimum priority.
+	 *
+	 * amortized complexity is O(log n), worst case O(n): consolidate goes over all roots
+	 */
+	public void deleteMin()
+	{
+		if (size <= 1) {	//if Heap is empty or has one node, clears the heap
+			clear();
+			return;
+		}
+		HeapNode removed = min;
+		HeapNode prev = removed.getPrev();
+		HeapNode next = removed.getNext();
+		int rank = removed.getRank();
+		HeapNode child = removed.getChild();
+		HeapNode nextAfterMin;
+		if (rank == 0) {	//the minimal node has no children, deletes it from the root list
+			prev.setNext(next);
+			next.setPrev(prev);
+			nextAfterMin = next;
+		}
+		else {	//the children of the minimal node replace it in the root list
+			nextAfterMin = child;
+			for (int i = 0; i < rank; i++) {
+				child.setParent(null);
+				unmarkNode(child);
+				child = child.getNext();
+			}
+			if (numOfRoots > 1) {
+				insertRoots(prev, next, child);
+			}
+		}
+		if (first == removed) {
+			first = nextAfterMin;
+		}
+		numOfRoots += rank - 1;
+		size--;
+		consolidate();
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * returns the node of the heap whose priority is minimal, null if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return min;
+	}
+
+	/**
+	 * public void meld(LongFibonacciHeap<V> heap2)
+	 *
+	 * melds the heap with heap2, heap2 should not be used afterwards
+	 *
+	 * complexity is O(1): splices the root lists and adds the counters
+	 */
+	public void meld(LongFibonacciHeap<V> heap2)
+	{
+		if (!heap2.isEmpty()) {
+			if (isEmpty()) {
+				first = heap2.first;
+				min = heap2.min;
+			}
+			else {
+				if (heap2.min.getKey() < min.getKey()) {
+					min = heap2.min;
+				}
+				insertRoots(first.getPrev(), first, heap2.first);
+			}
+		}
+		markedNodes += heap2.markedNodes;
+		numOfRoots += heap2.numOfRoots;
+		size += heap2.size;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of elements in the heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * Deletes the node x from the heap.
+	 * x is cut to the root list and made the minimum, without changing its priority,
+	 * so priorities near Long.MIN_VALUE cannot overflow
+	 *
+	 * amortized complexity is O(log n): a cut with cascading cuts and a deleteMin
+	 */
+	public void delete(HeapNode x)
+	{
+		if (!x.isRoot()) {
+			HeapNode parent = x.getParent();
+			makeRoot(x);
+			cascade(parent);
+		}
+		min = x;
+		deleteMin();
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, long delta)
+	 *
+	 * decreases the priority of the node x by delta, with cascading cuts if needed.
+	 *
+	 * precondition: delta >= 0
+	 *
+	 * amortized complexity is O(1)
+	 */
+	public void decreaseKey(HeapNode x, long delta)
+	{
+		x.setKey(x.getKey() - delta);
+		if (!x.isRoot()) {
+			HeapNode parent = x.getParent();
+			if (x.getKey() < parent.getKey()) {
+				makeRoot(x);
+				cascade(parent);
+			}
+		}
+		if (x.getKey() < min.getKey()) {
+			min = x;
+		}
+	}
+
+	/**
+	 * public int potential()
+	 *
+	 * returns the current potential of the heap: #trees + 2*#marked
+	 *
+	 * Complexity is O(1)
+	 */
+	public int potential()
+	{
+		return numOfRoots + 2 * markedNodes;
+	}
+
+	/**
+	 * public static long[] kMin(LongFibonacciHeap<V> H, int k)
+	 *
+	 * returns the k minimal priorities in a binomial tree H (the heap is not changed)
+	 *
+	 * precondition: H consists of a single binomial tree with at least k nodes
+	 *
+	 * Complexity is O(k(logk+degH)), see FibonacciHeap.kMin
+	 */
+	public static <V> long[] kMin(LongFibonacciHeap<V> H, int k)
+	{
+		long[] keyArr = new long[k];
+		LongFibonacciHeap<LongFibonacciHeap<V>.HeapNode> temp = new LongFibonacciHeap<LongFibonacciHeap<V>.HeapNode>();
+		insertLevel(temp, H.findMin());
+		for (int i = 0; i < k; i++) {
+			LongFibonacciHeap<LongFibonacciHeap<V>.HeapNode>.HeapNode currMin = temp.findMin();
+			LongFibonacciHeap<V>.HeapNode orgNode = currMin.getValue();
+			temp.deleteMin();
+			keyArr[i] = currMin.getKey();
+			insertLevel(temp, orgNode.getChild());
+		}
+		return keyArr;
+	}
+
+	/**
+	 * private static void insertLevel(LongFibonacciHeap<LongFibonacciHeap<V>.HeapNode> C, LongFibonacciHeap<V>.HeapNode x)
+	 *
+	 * helper method to kMin: inserts x and all its sibilings into C, with the original node as payload
+	 *
+	 * Complexity is O(number of sibilings)
+	 */
+	private static <V> void insertLevel(LongFibonacciHeap<LongFibonacciHeap<V>.HeapNode> C, LongFibonacciHeap<V>.HeapNode x)
+	{
+		if (x != null) {
+			LongFibonacciHeap<V>.HeapNode child = x;
+			do {
+				C.insert(child.getKey(), child);
+				child = child.getNext();
+			} while (child != x);
+		}
+	}
+
+	/**
+	 * private void unmarkNode(HeapNode x)
+	 *
+	 * removes the mark from node x and updates markedNodes accordingly
+	 *
+	 * Complexity is O(1)
+	 */
+	private void unmarkNode(HeapNode x)
+	{
+		if (x.isMarked()) {
+			x.unmark();
+			markedNodes--;
+		}
+	}
+
+	/**
+	 * private HeapNode link(HeapNode root1, HeapNode root2)
+	 *
+	 * links two trees with the same rank to one tree and returns its root
+	 *
+	 * precondition: root1.getRank() == root2.getRank()
+	 *
+	 * Complexity is O(1)
+	 */
+	private HeapNode link(HeapNode root1, HeapNode root2)
+	{
+		HeapNode parent;
+		HeapNode newChild;
+		if (root1.getKey() < root2.getKey()) {
+			parent = root1;
+			newChild = root2;
+		}
+		else {
+			parent = root2;
+			newChild = root1;
+		}
+		HeapNode prev = newChild.getPrev();
+		HeapNode next = newChild.getNext();
+		prev.setNext(next);
+		next.setPrev(prev);
+		if (parent.getRank() == 0) {
+			newChild.setNext(newChild);
+			newChild.setPrev(newChild);
+		}
+		else {
+			HeapNode oldChild = parent.getChild();
+			HeapNode childPrev = oldChild.getPrev();
+			childPrev.setNext(newChild);
+			oldChild.setPrev(newChild);
+			newChild.setPrev(childPrev);
+			newChild.setNext(oldChild);
+		}
+		newChild.setParent(parent);
+		parent.setChild(newChild);
+		parent.increaseRank();
+		return parent;
+	}
+
+	/**
+	 * private void clear()
+	 *
+	 * turns the heap into an empty heap
+	 *
+	 * Complexity is O(1)
+	 */
+	private void clear()
+	{
+		first = null;
+		min = null;
+		numOfRoots = 0;
+		size = 0;
+		markedNodes = 0;
+	}
+
+	/**
+	 * private void consolidate()
+	 *
+	 * links trees of same rank until at most 1 tree from each rank is left, and finds the new minimum
+	 *
+	 * Worst case complexity is O(n), amortized O(log n)
+	 */
+	private void consolidate()
+	{
+		int maxRank = (int) Math.ceil(1.45 * Math.log(size + 1) / Math.log(2)) + 1;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		HeapNode[] rankTrees = (HeapNode[]) new LongFibonacciHeap.HeapNode[maxRank];
+		HeapNode root = first;
+		for (int i = 0; i < numOfRoots; i++) {
+			HeapNode bucketRoot = root;
+			root = root.getNext();
+			int rank = bucketRoot.getRank();
+			while (rankTrees[rank] != null) {
+				bucketRoot = link(bucketRoot, rankTrees[rank]);
+				rankTrees[rank] = null;
+				rank++;
+			}
+			rankTrees[rank] = bucketRoot;
+		}
+		first = null;
+		min = null;
+		numOfRoots = 0;
+		for (HeapNode tree : rankTrees) {
+			if (tree != null) {
+				tree.setNext(tree);
+				tree.setPrev(tree);
+				if (first == null) {
+					first = tree;
+					min = tree;
+				}
+				else {
+					insertRoots(first.getPrev(), first, tree);
+					if (tree.getKey() < min.getKey()) {
+						min = tree;
+					}
+				}
+				numOfRoots++;
+			}
+		}
+	}
+
+	/**
+	 * private void insertRoots(HeapNode prev, HeapNode next, HeapNode firstRoot)
+	 *
+	 * inserts the list of linked nodes starting at firstRoot between prev and next
+	 *
+	 * Complexity is O(1)
+	 */
+	private void insertRoots(HeapNode prev, HeapNode next, HeapNode firstRoot)
+	{
+		HeapNode lastRoot = firstRoot.getPrev();
+		prev.setNext(firstRoot);
+		firstRoot.setPrev(prev);
+		lastRoot.setNext(next);
+		next.setPrev(lastRoot);
+	}
+
+	/**
+	 * private void makeRoot(HeapNode x)
+	 *
+	 * cuts x from its parent and makes it the first root in the heap
+	 *
+	 * precondition: x is not a root
+	 *
+	 * Complexity is O(1)
+	 */
+	private void makeRoot(HeapNode x)
+	{
+		HeapNode parent = x.getParent();
+		parent.decreaseRank();
+		numOfRoots++;
+		if (!x.isOnlyChild()) {
+			if (parent.getChild() == x) {
+				parent.setChild(x.getNext());
+			}
+			x.getPrev().setNext(x.getNext());
+			x.getNext().setPrev(x.getPrev());
+		}
+		else {
+			parent.setChild(null);
+		}
+		x.setParent(null);
+		x.setNext(x);
+		x.setPrev(x);
+		insertRoots(first.getPrev(), first, x);
+		first = x;
+		unmarkNode(x);
+	}
+
+	/**
+	 * private void cascade(HeapNode x)
+	 *
+	 * implements the cascading cuts from x upwards: marks the first unmarked ancestor, cutting the marked ones
+	 *
+	 * worst case complexity is O(n), amortized O(1)
+	 */
+	private void cascade(HeapNode x)
+	{
+		while (!x.isRoot()) {
+			if (!x.isMarked()) {
+				x.mark();
+				markedNodes++;
+				return;
+			}
+			HeapNode parent = x.getParent();
+			makeRoot(x);
+			x = parent;
+		}
+	}
+
+	/**
+	 * public class HeapNode
+	 *
+	 * a node in a LongFibonacciHeap, holding a long priority and a payload
+	 */
+	public class HeapNode {
+
+		private long key;
+		private V value;
+		private int rank;
+		private boolean marked;
+		private HeapNode child;
+		private HeapNode parent;
+		private HeapNode prev;
+		private HeapNode next;
+
+		/**
+		 * public HeapNode(long key, V value)
+		 *
+		 * HeapNode constructor, creates a single node ring
+		 *
+		 * Complexity is O(1)
+		 */
+		public HeapNode(long key, V value) {
+			this.key = key;
+			this.value = value;
+			next = this;
+			prev = this;
+		}
+
+		public long getKey() {
+			return key;
+		}
+
+		public void setKey(long newKey) {
+			key = newKey;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public void setValue(V newValue) {
+			value = newValue;
+		}
+
+		public int getRank() {
+			return rank;
+		}
+
+		public void increaseRank() {
+			rank++;
+		}
+
+		public void decreaseRank() {
+			rank--;
+		}
+
+		public boolean isMarked() {
+			return marked;
+		}
+
+		public void mark() {
+			marked = true;
+		}
+
+		public void unmark() {
+			marked = false;
+		}
+
+		public HeapNode getParent() {
+			return parent;
+		}
+
+		public void setParent(HeapNode x) {
+			parent = x;
+		}
+
+		public HeapNode getChild() {
+			return child;
+		}
+
+		public void setChild(HeapNode x) {
+			child = x;
+		}
+
+		public HeapNode getNext() {
+			return next;
+		}
+
+		public void setNext(HeapNode x) {
+			next = x;
+		}
+
+		public HeapNode getPrev() {
+			return prev;
+		}
+
+		public void setPrev(HeapNode x) {
+			prev = x;
+		}
+
+		/**
+		 * public boolean isOnlyChild()
+		 *
+		 * returns true iff the node has no sibilings
+		 */
+		public boolean isOnlyChild() {
+			return next == this;
+		}
+
+		/**
+		 * public boolean isRoot()
+		 *
+		 * returns true iff the node is a root
+		 */
+		public boolean isRoot() {
+			return parent == null;
+		}
+	}
+}
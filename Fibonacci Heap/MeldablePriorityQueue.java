@@ -0,0 +1,79 @@
+/**
+ * MeldablePriorityQueue
+ *
+ * The common interface of the meldable heaps over integers (FibonacciHeap, PairingHeap, RankPairingHeap, RadixHeap).
+ * Q is the implementing heap, so meld only accepts a heap of the same kind, and N is its node type,
+ * which is the handle returned by insert and taken by decreaseKey and delete.
+ */
+public interface MeldablePriorityQueue<Q extends MeldablePriorityQueue<Q, N>, N extends MeldablePriorityQueue.Node>
+{
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * returns true if and only if the heap is empty
+	 */
+	boolean isEmpty();
+
+	/**
+	 * public N insert(int key)
+	 *
+	 * creates a node which contains the given key, inserts it into the heap and returns it
+	 */
+	N insert(int key);
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * deletes the node containing the minimum key
+	 */
+	void deleteMin();
+
+	/**
+	 * public N findMin()
+	 *
+	 * returns the node of the heap whose key is minimal, null if the heap is empty
+	 */
+	N findMin();
+
+	/**
+	 * public void meld(Q heap2)
+	 *
+	 * melds the heap with heap2, heap2 should not be used afterwards
+	 */
+	void meld(Q heap2);
+
+	/**
+	 * public void decreaseKey(N x, int delta)
+	 *
+	 * decreases the key of the node x by delta
+	 *
+	 * precondition: delta >= 0, x is in the heap
+	 */
+	void decreaseKey(N x, int delta);
+
+	/**
+	 * public void delete(N x)
+	 *
+	 * deletes the node x from the heap
+	 *
+	 * precondition: x is in the heap
+	 */
+	void delete(N x);
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of elements in the heap
+	 */
+	int size();
+
+	/**
+	 * public interface Node
+	 *
+	 * a node of a MeldablePriorityQueue
+	 */
+	public interface Node
+	{
+		int getKey();
+	}
+}
@@ -0,0 +1,270 @@
+/**
+ * PairingHeap
+ *
+ * An implementation of pairing heap over integers, as a MeldablePriorityQueue.
+ * every node keeps its leftmost child and its right sibling; prev points to the left sibling,
+ * or to the parent for a leftmost child. deleteMin combines the children of the root in two passes.
+ * keys may repeat: nodes are always told apart by identity, never by key.
+ */
+public class PairingHeap implements MeldablePriorityQueue<PairingHeap, PairingHeap.HeapNode>
+{
+	private HeapNode root;
+	private int size;
+
+	/**
+	 * public PairingHeap()
+	 *
+	 * PairingHeap constructor, creates an empty heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public PairingHeap() {
+		root = null;
+		size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * The method returns true if and only if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return root == null;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * creates a node which contains the given key, links it with the root and returns it.
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		HeapNode newNode = new HeapNode(key);
+		root = root == null ? newNode : link(root, newNode);
+		size++;
+		return newNode;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * deletes the root, its children are combined into the new root by mergePairs.
+	 *
+	 * amortized complexity is O(log n), worst case O(n)
+	 */
+	public void deleteMin()
+	{
+		if (root == null) {
+			return;
+		}
+		HeapNode children = root.child;
+		root.child = null;
+		root = mergePairs(children);
+		size--;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * returns the node of the heap whose key is minimal, null if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return root;
+	}
+
+	/**
+	 * public void meld(PairingHeap heap2)
+	 *
+	 * melds the heap with heap2 by linking the two roots
+	 *
+	 * Complexity is O(1)
+	 */
+	public void meld(PairingHeap heap2)
+	{
+		if (heap2.root != null) {
+			root = root == null ? heap2.root : link(root, heap2.root);
+		}
+		size += heap2.size;
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * decreases the key of x by delta. unless x is the root, its subtree is cut and linked with the root
+	 *
+	 * Complexity is O(1), amortized O(log n) (the known bound for pairing heaps is o(log n))
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		x.key -= delta;
+		if (x != root) {
+			cut(x);
+			root = link(root, x);
+		}
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * deletes x: its subtree is cut, and its children are combined and linked back with the root
+	 *
+	 * amortized complexity is O(log n)
+	 */
+	public void delete(HeapNode x)
+	{
+		if (x == root) {
+			deleteMin();
+			return;
+		}
+		cut(x);
+		HeapNode children = x.child;
+		x.child = null;
+		HeapNode sub = mergePairs(children);
+		if (sub != null) {
+			root = link(root, sub);
+		}
+		size--;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of elements in the heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * private static HeapNode link(HeapNode a, HeapNode b)
+	 *
+	 * links two trees: the root with the larger key becomes the leftmost child of the other, which is returned.
+	 *
+	 * precondition: a and b are roots without siblings
+	 *
+	 * Complexity is O(1)
+	 */
+	private static HeapNode link(HeapNode a, HeapNode b)
+	{
+		if (b.key < a.key) {
+			HeapNode temp = a;
+			a = b;
+			b = temp;
+		}
+		b.next = a.child;
+		if (a.child != null) {
+			a.child.prev = b;
+		}
+		b.prev = a;
+		a.child = b;
+		a.prev = null;
+		a.next = null;
+		return a;
+	}
+
+	/**
+	 * private static void cut(HeapNode x)
+	 *
+	 * detaches the subtree of x from its parent and siblings
+	 *
+	 * precondition: x is not the root
+	 *
+	 * Complexity is O(1)
+	 */
+	private static void cut(HeapNode x)
+	{
+		if (x.prev.child == x) {	//x is the leftmost child, prev is its parent
+			x.prev.child = x.next;
+		}
+		else {
+			x.prev.next = x.next;
+		}
+		if (x.next != null) {
+			x.next.prev = x.prev;
+		}
+		x.prev = null;
+		x.next = null;
+	}
+
+	/**
+	 * private static HeapNode mergePairs(HeapNode first)
+	 *
+	 * combines the sibling list starting at first into one tree and returns its root (null for an empty list).
+	 * the first pass links the siblings in pairs from left to right, the second pass links the
+	 * results from right to left. it is iterative, the pairs are kept in a stack through their next fields
+	 *
+	 * Complexity is O(number of siblings)
+	 */
+	private static HeapNode mergePairs(HeapNode first)
+	{
+		HeapNode pairs = null;
+		HeapNode a = first;
+		while (a != null) {
+			HeapNode b = a.next;
+			HeapNode rest = b == null ? null : b.next;
+			a.prev = null;
+			a.next = null;
+			HeapNode pair = a;
+			if (b != null) {
+				b.prev = null;
+				b.next = null;
+				pair = link(a, b);
+			}
+			pair.next = pairs;
+			pairs = pair;
+			a = rest;
+		}
+		if (pairs == null) {
+			return null;
+		}
+		HeapNode res = pairs;
+		pairs = pairs.next;
+		res.next = null;
+		while (pairs != null) {
+			HeapNode next = pairs.next;
+			pairs.next = null;
+			res = link(res, pairs);
+			pairs = next;
+		}
+		return res;
+	}
+
+	/**
+	 * public class HeapNode
+	 *
+	 * a node in a PairingHeap
+	 */
+	public class HeapNode implements MeldablePriorityQueue.Node {
+
+		private int key;
+		private HeapNode child;
+		private HeapNode prev;
+		private HeapNode next;
+
+		/**
+		 * public HeapNode(int key)
+		 *
+		 * HeapNode constructor, creates a single node tree
+		 *
+		 * Complexity is O(1)
+		 */
+		public HeapNode(int key) {
+			this.key = key;
+		}
+
+		public int getKey() {
+			return key;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * RadixHeap
+ *
+ * An implementation of radix heap over non negative integers, as a MeldablePriorityQueue for monotone workloads
+ * (like dijkstra with non negative lengths), where a key is never smaller than the last minimum taken out.
+ * the heap remembers last, the key of the last minimum found. bucket 0 holds the keys equal to last and
+ * bucket i > 0 holds the keys whose highest bit that differs from last is bit i - 1, so a key only moves to
+ * lower buckets, at most 32 times. buckets are arrays that are scanned sequentially when a bucket is split.
+ * keys may repeat: nodes are always told apart by identity, never by key.
+ */
+public class RadixHeap implements MeldablePriorityQueue<RadixHeap, RadixHeap.HeapNode>
+{
+	private static final int NUM_OF_BUCKETS = 33;
+
+	private final HeapNode[][] buckets = new HeapNode[NUM_OF_BUCKETS][];
+	private final int[] counts = new int[NUM_OF_BUCKETS];
+	private int last;
+	private int size;
+
+	/**
+	 * public RadixHeap()
+	 *
+	 * RadixHeap constructor, creates an empty heap whose last minimum is 0
+	 *
+	 * Complexity is O(1)
+	 */
+	public RadixHeap() {
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			buckets[i] = new HeapNode[4];
+		}
+		last = 0;
+		size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * The method returns true if and only if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * creates a node which contains the given key, inserts it into its bucket and returns it.
+	 *
+	 * precondition: key >= the key of the last findMin or deleteMin (0 if there was none)
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		HeapNode newNode = new HeapNode(key);
+		add(newNode);
+		size++;
+		return newNode;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * deletes a node with the minimum key
+	 *
+	 * amortized complexity is O(log C), C being the largest key: every node is moved at most 32 times
+	 */
+	public void deleteMin()
+	{
+		if (isEmpty()) {
+			return;
+		}
+		remove(findMin());
+		size--;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * returns a node of the heap whose key is minimal, null if the heap is empty.
+	 * if bucket 0 is empty, the first non empty bucket is split: its minimum becomes last
+	 * and all its nodes move to lower buckets
+	 *
+	 * amortized complexity is O(log C)
+	 */
+	public HeapNode findMin()
+	{
+		if (isEmpty()) {
+			return null;
+		}
+		if (counts[0] == 0) {
+			int i = 1;
+			while (counts[i] == 0) {
+				i++;
+			}
+			HeapNode[] bucket = buckets[i];
+			int count = counts[i];
+			int min = bucket[0].key;
+			for (int j = 1; j < count; j++) {
+				if (bucket[j].key < min) {
+					min = bucket[j].key;
+				}
+			}
+			last = min;
+			counts[i] = 0;
+			for (int j = 0; j < count; j++) {
+				HeapNode x = bucket[j];
+				bucket[j] = null;
+				add(x);
+			}
+		}
+		return buckets[0][0];
+	}
+
+	/**
+	 * public void meld(RadixHeap heap2)
+	 *
+	 * melds the heap with heap2 by moving the nodes of heap2 into the buckets of this heap.
+	 * only if heap2 holds a key smaller than last, last becomes that key and the nodes of this heap
+	 * are put in their buckets again
+	 *
+	 * Complexity is O(heap2.size()) amortized, O(n + heap2.size()) if last changed
+	 */
+	public void meld(RadixHeap heap2)
+	{
+		if (heap2.isEmpty()) {
+			return;
+		}
+		int min2 = heap2.findMin().key;
+		if (min2 < last) {
+			last = min2;
+			rebucket(this);
+		}
+		rebucket(heap2);
+		size += heap2.size;
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * decreases the key of x by delta and moves it to the bucket of its new key
+	 *
+	 * precondition: x.getKey() - delta >= the key of the last findMin or deleteMin
+	 *
+	 * Complexity is O(1)
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		int bucket = bucketOf(x.key - delta);
+		x.key -= delta;
+		if (bucket != x.bucket) {
+			remove(x);
+			add(x);
+		}
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * deletes x from its bucket
+	 *
+	 * Complexity is O(1)
+	 */
+	public void delete(HeapNode x)
+	{
+		remove(x);
+		size--;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of elements in the heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * private int bucketOf(int key)
+	 *
+	 * returns 0 if key == last, otherwise 1 + the index of the highest bit in which key and last differ
+	 */
+	private int bucketOf(int key)
+	{
+		return key == last ? 0 : 32 - Integer.numberOfLeadingZeros(key ^ last);
+	}
+
+	/**
+	 * private void add(HeapNode x)
+	 *
+	 * appends x to the bucket of its key, doubling the bucket array if it is full
+	 *
+	 * Complexity is O(1) amortized
+	 */
+	private void add(HeapNode x)
+	{
+		int i = bucketOf(x.key);
+		if (counts[i] == buckets[i].length) {
+			HeapNode[] bigger = new HeapNode[2 * counts[i]];
+			System.arraycopy(buckets[i], 0, bigger, 0, counts[i]);
+			buckets[i] = bigger;
+		}
+		x.bucket = i;
+		x.index = counts[i];
+		buckets[i][counts[i]++] = x;
+	}
+
+	/**
+	 * private void remove(HeapNode x)
+	 *
+	 * removes x from its bucket by moving the last node of the bucket into its place
+	 *
+	 * Complexity is O(1)
+	 */
+	private void remove(HeapNode x)
+	{
+		HeapNode[] bucket = buckets[x.bucket];
+		int lastIndex = --counts[x.bucket];
+		HeapNode moved = bucket[lastIndex];
+		bucket[x.index] = moved;
+		moved.index = x.index;
+		bucket[lastIndex] = null;
+	}
+
+	/**
+	 * private void rebucket(RadixHeap heap)
+	 *
+	 * empties the buckets of heap and adds all its nodes to the buckets of this heap
+	 *
+	 * Complexity is O(heap.size())
+	 */
+	private void rebucket(RadixHeap heap)
+	{
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			HeapNode[] bucket = heap.buckets[i];
+			int count = heap.counts[i];
+			heap.counts[i] = 0;
+			for (int j = 0; j < count; j++) {
+				HeapNode x = bucket[j];
+				bucket[j] = null;
+				add(x);
+			}
+		}
+	}
+
+	/**
+	 * public class HeapNode
+	 *
+	 * a node in a RadixHeap, which knows its place in the bucket arrays
+	 */
+	public class HeapNode implements MeldablePriorityQueue.Node {
+
+		private int key;
+		private int bucket;
+		private int index;
+
+		/**
+		 * public HeapNode(int key)
+		 *
+		 * HeapNode constructor
+		 *
+		 * Complexity is O(1)
+		 */
+		public HeapNode(int key) {
+			this.key = key;
+		}
+
+		public int getKey() {
+			return key;
+		}
+	}
+}
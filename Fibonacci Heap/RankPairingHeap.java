@@ -0,0 +1,353 @@
+/**
+ * RankPairingHeap
+ *
+ * An implementation of rank-pairing heap (type 1) over integers, as a MeldablePriorityQueue.
+ * the heap is a list of half trees: every node keeps a left and a right child, the key of a node is at most
+ * the keys of its left subtree, and a root has no right child. the roots are linked through their right fields.
+ * decreaseKey cuts without cascading and repairs ranks on the way up, deleteMin links half trees of equal
+ * rank in a single pass, which keeps the bounds of the fibonacci heap with less pointer work.
+ * keys may repeat: nodes are always told apart by identity, never by key.
+ */
+public class RankPairingHeap implements MeldablePriorityQueue<RankPairingHeap, RankPairingHeap.HeapNode>
+{
+	private HeapNode min;
+	private HeapNode first;
+	private HeapNode last;
+	private int size;
+	private HeapNode[] rankBuckets = new HeapNode[8];
+
+	/**
+	 * public RankPairingHeap()
+	 *
+	 * RankPairingHeap constructor, creates an empty heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public RankPairingHeap() {
+		min = null;
+		first = null;
+		last = null;
+		size = 0;
+	}
+
+	/**
+	 * public boolean isEmpty()
+	 *
+	 * The method returns true if and only if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public boolean isEmpty()
+	{
+		return first == null;
+	}
+
+	/**
+	 * public HeapNode insert(int key)
+	 *
+	 * creates a node which contains the given key, and adds it to the root list as a half tree of rank 0.
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode insert(int key)
+	{
+		HeapNode newNode = new HeapNode(key);
+		addRoot(newNode);
+		size++;
+		return newNode;
+	}
+
+	/**
+	 * public void deleteMin()
+	 *
+	 * deletes the minimal root. the right spine of its left child falls apart into half trees,
+	 * then all half trees are linked in one pass: two trees of the same rank are linked and the result
+	 * is put aside without linking it again.
+	 *
+	 * amortized complexity is O(log n), worst case O(n): goes over all roots
+	 */
+	public void deleteMin()
+	{
+		if (min == null) {
+			return;
+		}
+		HeapNode removed = min;
+		HeapNode roots = first;
+		first = null;
+		last = null;
+		min = null;
+		HeapNode spine = removed.left;
+		removed.left = null;
+		while (spine != null) {
+			HeapNode next = spine.right;
+			spine.right = null;
+			spine.parent = null;
+			spine.rank = spine.left == null ? 0 : spine.left.rank + 1;
+			bucket(spine);
+			spine = next;
+		}
+		while (roots != null) {
+			HeapNode next = roots.right;
+			roots.right = null;
+			if (roots != removed) {
+				bucket(roots);
+			}
+			roots = next;
+		}
+		for (int i = 0; i < rankBuckets.length; i++) {
+			if (rankBuckets[i] != null) {
+				addRoot(rankBuckets[i]);
+				rankBuckets[i] = null;
+			}
+		}
+		size--;
+	}
+
+	/**
+	 * public HeapNode findMin()
+	 *
+	 * returns the node of the heap whose key is minimal, null if the heap is empty.
+	 *
+	 * Complexity is O(1)
+	 */
+	public HeapNode findMin()
+	{
+		return min;
+	}
+
+	/**
+	 * public void meld(RankPairingHeap heap2)
+	 *
+	 * melds the heap with heap2 by concatenating the root lists
+	 *
+	 * Complexity is O(1)
+	 */
+	public void meld(RankPairingHeap heap2)
+	{
+		if (heap2.isEmpty()) {
+			return;
+		}
+		if (isEmpty()) {
+			first = heap2.first;
+			min = heap2.min;
+		}
+		else {
+			last.right = heap2.first;
+			if (heap2.min.key < min.key) {
+				min = heap2.min;
+			}
+		}
+		last = heap2.last;
+		size += heap2.size;
+	}
+
+	/**
+	 * public void decreaseKey(HeapNode x, int delta)
+	 *
+	 * decreases the key of x by delta. unless x is a root, x is cut with its left subtree and becomes a root,
+	 * its right subtree takes its place, and the ranks of the ancestors are repaired.
+	 *
+	 * amortized complexity is O(1)
+	 */
+	public void decreaseKey(HeapNode x, int delta)
+	{
+		x.key -= delta;
+		if (x.parent != null) {
+			cut(x);
+			addRoot(x);
+		}
+		else if (x.key < min.key) {
+			min = x;
+		}
+	}
+
+	/**
+	 * public void delete(HeapNode x)
+	 *
+	 * deletes x: it is cut like in decreaseKey, made the minimum and removed by deleteMin
+	 *
+	 * amortized complexity is O(log n)
+	 */
+	public void delete(HeapNode x)
+	{
+		if (x.parent != null) {
+			cut(x);
+			addRoot(x);
+		}
+		min = x;
+		deleteMin();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of elements in the heap
+	 *
+	 * Complexity is O(1)
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * private void addRoot(HeapNode x)
+	 *
+	 * appends the half tree x to the root list and updates the minimum
+	 *
+	 * precondition: x.right == null, x.parent == null
+	 *
+	 * Complexity is O(1)
+	 */
+	private void addRoot(HeapNode x)
+	{
+		if (first == null) {
+			first = x;
+		}
+		else {
+			last.right = x;
+		}
+		last = x;
+		if (min == null || x.key < min.key) {
+			min = x;
+		}
+	}
+
+	/**
+	 * private void bucket(HeapNode x)
+	 *
+	 * puts the half tree x in the bucket of its rank. if the bucket is taken, the two trees are linked
+	 * and the result goes straight to the root list
+	 *
+	 * Complexity is O(1), amortized O(1) for growing the buckets
+	 */
+	private void bucket(HeapNode x)
+	{
+		if (x.rank >= rankBuckets.length) {
+			HeapNode[] bigger = new HeapNode[Math.max(rankBuckets.length * 2, x.rank + 1)];
+			System.arraycopy(rankBuckets, 0, bigger, 0, rankBuckets.length);
+			rankBuckets = bigger;
+		}
+		HeapNode other = rankBuckets[x.rank];
+		if (other == null) {
+			rankBuckets[x.rank] = x;
+		}
+		else {
+			rankBuckets[x.rank] = null;
+			addRoot(link(other, x));
+		}
+	}
+
+	/**
+	 * private static HeapNode link(HeapNode x, HeapNode y)
+	 *
+	 * links two half trees of equal rank: the root with the larger key becomes the left child of the other,
+	 * and the old left subtree of the winner becomes its right subtree. returns the winner, whose rank grows by 1
+	 *
+	 * precondition: x and y are roots of the same rank
+	 *
+	 * Complexity is O(1)
+	 */
+	private static HeapNode link(HeapNode x, HeapNode y)
+	{
+		if (y.key < x.key) {
+			HeapNode temp = x;
+			x = y;
+			y = temp;
+		}
+		y.right = x.left;
+		if (x.left != null) {
+			x.left.parent = y;
+		}
+		x.left = y;
+		y.parent = x;
+		x.rank++;
+		return x;
+	}
+
+	/**
+	 * private static void cut(HeapNode x)
+	 *
+	 * detaches x with its left subtree, puts its right subtree in its place and repairs the ranks
+	 * above it by the type 1 rule: a non root node with children of ranks a >= b (-1 for a missing child)
+	 * has rank a if a > b and a + 1 otherwise, and a root has the rank of its left child plus 1.
+	 * the repair stops at the first ancestor whose rank does not drop
+	 *
+	 * precondition: x is not a root
+	 *
+	 * amortized complexity is O(1)
+	 */
+	private static void cut(HeapNode x)
+	{
+		HeapNode parent = x.parent;
+		HeapNode y = x.right;
+		if (parent.left == x) {
+			parent.left = y;
+		}
+		else {
+			parent.right = y;
+		}
+		if (y != null) {
+			y.parent = parent;
+		}
+		x.right = null;
+		x.parent = null;
+		x.rank = x.left == null ? 0 : x.left.rank + 1;
+		HeapNode u = parent;
+		while (u != null) {
+			int newRank;
+			if (u.parent == null) {
+				newRank = u.left == null ? 0 : u.left.rank + 1;
+			}
+			else {
+				int a = rankOf(u.left);
+				int b = rankOf(u.right);
+				if (a < b) {
+					int temp = a;
+					a = b;
+					b = temp;
+				}
+				newRank = a > b ? a : a + 1;
+			}
+			if (newRank >= u.rank) {
+				break;
+			}
+			u.rank = newRank;
+			u = u.parent;
+		}
+	}
+
+	private static int rankOf(HeapNode x)
+	{
+		return x == null ? -1 : x.rank;
+	}
+
+	/**
+	 * public class HeapNode
+	 *
+	 * a node in a RankPairingHeap
+	 */
+	public class HeapNode implements MeldablePriorityQueue.Node {
+
+		private int key;
+		private int rank;
+		private HeapNode left;
+		private HeapNode right;
+		private HeapNode parent;
+
+		/**
+		 * public HeapNode(int key)
+		 *
+		 * HeapNode constructor, creates a half tree of rank 0
+		 *
+		 * Complexity is O(1)
+		 */
+		public HeapNode(int key) {
+			this.key = key;
+		}
+
+		public int getKey() {
+			return key;
+		}
+	}
+}
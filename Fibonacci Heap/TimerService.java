@@ -0,0 +1,392 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TimerService
+ *
+ * A deadline scheduler built on a LongFibonacciHeap, driven by a single event loop thread.
+ * near timers (due within one bucket width) are kept in the heap: insert to schedule, decreaseKey to
+ * reschedule earlier, delete to cancel, findMin/deleteMin to fire. far timers wait in a hashed wheel of
+ * coarse time buckets and move into the heap only when their bucket comes close, so the heap stays small.
+ *
+ * schedule, reschedule and cancel may be called from any thread: they are queued as commands and applied
+ * by the event loop, which is the only thread touching the heap and the wheel.
+ * fired tasks run on the given Executor (for example Executors.newVirtualThreadPerTaskExecutor() on
+ * Java 21 and later), and the lag between deadline and dispatch is recorded in a log2 histogram.
+ *
+ */
+public class TimerService {
+
+	private static final int PENDING = 0;
+	private static final int IN_WHEEL = 1;
+	private static final int IN_HEAP = 2;
+	private static final int DONE = 3;
+
+	private final Executor dispatcher;
+	private final long bucketNanos;
+	private final Timer[] wheel;
+	private final int maxBatch;
+	private final LongFibonacciHeap<Timer> heap = new LongFibonacciHeap<Timer>();
+	private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicLongArray lagHistogram = new AtomicLongArray(64);
+	private final Thread loop;
+	private volatile boolean running;
+	private long wheelTime; // start of the first bucket that was not moved to the heap yet
+	private int activeTimers;
+
+	/**
+	 * public TimerService(Executor dispatcher, long bucketNanos, int numOfBuckets, int maxBatch)
+	 *
+	 * TimerService constructor. timers due later than bucketNanos from now wait in a wheel of numOfBuckets buckets,
+	 * and at most maxBatch timers are fired in one pass of the event loop before it checks for new commands.
+	 * the event loop starts with start()
+	 *
+	 * precondition: bucketNanos > 0, numOfBuckets > 0, maxBatch > 0
+	 */
+	public TimerService(Executor dispatcher, long bucketNanos, int numOfBuckets, int maxBatch)
+	{
+		this.dispatcher = dispatcher;
+		this.bucketNanos = bucketNanos;
+		this.wheel = new Timer[numOfBuckets];
+		this.maxBatch = maxBatch;
+		this.loop = new Thread(new Runnable() {
+			public void run() {
+				runLoop();
+			}
+		}, "timer-service");
+		this.loop.setDaemon(true);
+	}
+
+	/**
+	 * public void start()
+	 *
+	 * starts the event loop thread
+	 */
+	public void start()
+	{
+		wheelTime = bucketStart(System.nanoTime());
+		running = true;
+		loop.start();
+	}
+
+	/**
+	 * public void shutdown()
+	 *
+	 * stops the event loop, pending timers are not fired
+	 */
+	public void shutdown()
+	{
+		running = false;
+		LockSupport.unpark(loop);
+	}
+
+	/**
+	 * public Timer schedule(Runnable task, long delayNanos)
+	 *
+	 * schedules task to run delayNanos from now and returns its timer
+	 *
+	 * Complexity is O(1), the timer is added by the event loop
+	 */
+	public Timer schedule(Runnable task, long delayNanos)
+	{
+		final Timer timer = new Timer(task, System.nanoTime() + Math.max(0, delayNanos));
+		submit(new Runnable() {
+			public void run() {
+				add(timer);
+			}
+		});
+		return timer;
+	}
+
+	/**
+	 * public void reschedule(Timer timer, long delayNanos)
+	 *
+	 * moves the deadline of timer to delayNanos from now, unless it already fired or was cancelled.
+	 * an earlier deadline of a timer in the heap is a decreaseKey, otherwise the timer is removed and added again
+	 *
+	 * Complexity is O(1), applied by the event loop in O(1) amortized (O(log n) for a later deadline)
+	 */
+	public void reschedule(final Timer timer, long delayNanos)
+	{
+		final long deadline = System.nanoTime() + Math.max(0, delayNanos);
+		submit(new Runnable() {
+			public void run() {
+				if (timer.state == DONE) {
+					return;
+				}
+				if (timer.state == IN_HEAP && deadline <= timer.deadline) {
+					heap.decreaseKey(timer.node, timer.deadline - deadline);
+					timer.deadline = deadline;
+					return;
+				}
+				remove(timer);
+				timer.deadline = deadline;
+				add(timer);
+			}
+		});
+	}
+
+	/**
+	 * public void cancel(Timer timer)
+	 *
+	 * cancels timer, unless it already fired
+	 *
+	 * Complexity is O(1), applied by the event loop in O(log n) amortized (heap delete) or O(1) (wheel)
+	 */
+	public void cancel(final Timer timer)
+	{
+		timer.cancelled = true;
+		submit(new Runnable() {
+			public void run() {
+				if (timer.state != DONE) {
+					remove(timer);
+					timer.state = DONE;
+				}
+			}
+		});
+	}
+
+	/**
+	 * public long[] lagHistogram()
+	 *
+	 * returns a copy of the firing lag histogram: entry i counts the timers dispatched between
+	 * 2^(i-1) and 2^i - 1 nanoseconds after their deadline (entry 0 counts lag 0)
+	 *
+	 * Complexity is O(1)
+	 */
+	public long[] lagHistogram()
+	{
+		long[] res = new long[lagHistogram.length()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = lagHistogram.get(i);
+		}
+		return res;
+	}
+
+	/**
+	 * public int activeTimers()
+	 *
+	 * returns the number of timers in the heap and in the wheel, as last seen by the event loop
+	 */
+	public int activeTimers()
+	{
+		return activeTimers;
+	}
+
+	/**
+	 * private void submit(Runnable command)
+	 *
+	 * queues command for the event loop and wakes it up
+	 */
+	private void submit(Runnable command)
+	{
+		commands.add(command);
+		LockSupport.unpark(loop);
+	}
+
+	/**
+	 * private void runLoop()
+	 *
+	 * the event loop: applies queued commands, moves buckets that became near into the heap,
+	 * fires expired timers in batches and sleeps until the next deadline or command
+	 */
+	private void runLoop()
+	{
+		while (running) {
+			Runnable command;
+			while ((command = commands.poll()) != null) {
+				command.run();
+			}
+			long now = System.nanoTime();
+			advanceWheel(now);
+			int fired = 0;
+			while (fired < maxBatch && !heap.isEmpty() && heap.findMin().getKey() <= now) {
+				Timer timer = heap.findMin().getValue();
+				heap.deleteMin();
+				timer.state = DONE;
+				timer.node = null;
+				activeTimers--;
+				fired++;
+				recordLag(now - timer.deadline);
+				dispatcher.execute(timer.task);
+			}
+			if (fired == maxBatch || !commands.isEmpty()) {
+				continue;
+			}
+			long wakeUp = wheelTime;
+			if (!heap.isEmpty()) {
+				wakeUp = Math.min(wakeUp, heap.findMin().getKey());
+			}
+			long sleep = wakeUp - System.nanoTime();
+			if (sleep > 0) {
+				LockSupport.parkNanos(this, sleep);
+			}
+		}
+	}
+
+	/**
+	 * private void add(Timer timer)
+	 *
+	 * puts timer in the heap if it is due before the wheel time plus one bucket, otherwise in its wheel bucket
+	 *
+	 * Complexity is O(1)
+	 */
+	private void add(Timer timer)
+	{
+		if (timer.cancelled) {
+			timer.state = DONE;
+			return;
+		}
+		activeTimers++;
+		if (timer.deadline < wheelTime + bucketNanos) {
+			timer.node = heap.insert(timer.deadline, timer);
+			timer.state = IN_HEAP;
+		}
+		else {
+			int index = bucketIndex(timer.deadline);
+			timer.prev = null;
+			timer.next = wheel[index];
+			if (wheel[index] != null) {
+				wheel[index].prev = timer;
+			}
+			wheel[index] = timer;
+			timer.state = IN_WHEEL;
+		}
+	}
+
+	/**
+	 * private void remove(Timer timer)
+	 *
+	 * removes timer from the heap or from its wheel bucket
+	 *
+	 * Complexity is O(log n) amortized in the heap, O(1) in the wheel
+	 */
+	private void remove(Timer timer)
+	{
+		if (timer.state == IN_HEAP) {
+			heap.delete(timer.node);
+			timer.node = null;
+			activeTimers--;
+		}
+		else if (timer.state == IN_WHEEL) {
+			if (timer.prev != null) {
+				timer.prev.next = timer.next;
+			}
+			else {
+				wheel[bucketIndex(timer.deadline)] = timer.next;
+			}
+			if (timer.next != null) {
+				timer.next.prev = timer.prev;
+			}
+			timer.prev = null;
+			timer.next = null;
+			activeTimers--;
+		}
+		timer.state = PENDING;
+	}
+
+	/**
+	 * private void advanceWheel(long now)
+	 *
+	 * moves the timers of every bucket that starts before now plus one bucket into the heap.
+	 * a bucket is shared by deadlines that are a multiple of the wheel span apart, so timers of later rounds stay.
+	 * after a stall of a full round or more (a GC pause, an overloaded loop) every bucket is due, and timers
+	 * of later rounds may be overdue too, so every bucket is swept once for the timers due before now plus
+	 * two buckets, instead of leaving them until the wheel comes round again
+	 *
+	 * Complexity is O(number of buckets passed + timers in them), O(number of buckets + timers in the wheel) after a stall
+	 */
+	private void advanceWheel(long now)
+	{
+		if (now + bucketNanos - wheelTime >= wheel.length * bucketNanos) {
+			long horizon = now + 2 * bucketNanos;
+			for (int index = 0; index < wheel.length; index++) {
+				moveToHeap(index, horizon);
+			}
+			wheelTime = bucketStart(now) + bucketNanos; //every timer due before it plus one bucket is in the heap
+			return;
+		}
+		while (wheelTime <= now + bucketNanos) {
+			moveToHeap(bucketIndex(wheelTime), wheelTime + 2 * bucketNanos);
+			wheelTime += bucketNanos;
+		}
+	}
+
+	/**
+	 * private void moveToHeap(int index, long horizon)
+	 *
+	 * moves the timers of bucket index that are due before horizon into the heap
+	 *
+	 * Complexity is O(timers in the bucket), plus O(1) per moved timer
+	 */
+	private void moveToHeap(int index, long horizon)
+	{
+		Timer timer = wheel[index];
+		while (timer != null) {
+			Timer next = timer.next;
+			if (timer.deadline < horizon) {
+				remove(timer);
+				activeTimers++;
+				timer.node = heap.insert(timer.deadline, timer);
+				timer.state = IN_HEAP;
+			}
+			timer = next;
+		}
+	}
+
+	private long bucketStart(long time)
+	{
+		return Math.floorDiv(time, bucketNanos) * bucketNanos;
+	}
+
+	private int bucketIndex(long time)
+	{
+		return (int) Math.floorMod(Math.floorDiv(time, bucketNanos), (long) wheel.length);
+	}
+
+	/**
+	 * private void recordLag(long lag)
+	 *
+	 * counts lag in the histogram entry of its bit length
+	 *
+	 * Complexity is O(1)
+	 */
+	private void recordLag(long lag)
+	{
+		int index = lag <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(lag);
+		lagHistogram.incrementAndGet(Math.min(index, lagHistogram.length() - 1));
+	}
+
+	/**
+	 * public static class Timer
+	 *
+	 * a handle to a scheduled task. its fields are owned by the event loop
+	 */
+	public static class Timer {
+
+		private final Runnable task;
+		private long deadline;
+		private int state;
+		private volatile boolean cancelled;
+		private LongFibonacciHeap<Timer>.HeapNode node;
+		private Timer prev;
+		private Timer next;
+
+		private Timer(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+			this.state = PENDING;
+		}
+
+		/**
+		 * public boolean isCancelled()
+		 *
+		 * returns true iff cancel was called on this timer
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
@@ -2,8 +2,9 @@
  * FibonacciHeap
  *
  * An implementation of fibonacci heap over integers.
+ * keys may repeat: nodes in sibling lists are always told apart by identity, never by key.
  */
-public class FibonacciHeap
+public class FibonacciHeap implements MeldablePriorityQueue<FibonacciHeap, FibonacciHeap.HeapNode>
 {
 	public static int CUTS = 0;
 	public static int LINKS = 0;
@@ -12,6 +13,11 @@ public class FibonacciHeap
 	private int size;
 	private int numOfRoots;
 	private int markedNodes;
+	private final boolean lazyDelete;
+	private final double purgeRatio;
+	private int tombstones;
+	private int purges;
+	private HeapProfiler profiler;
 	
 	/**
 	 * public FibonacciHeap()
@@ -21,11 +27,30 @@ public class FibonacciHeap
 	 * Complexity is O(1)
 	 */
 	public FibonacciHeap() {
+		this(false, 1);
+	}
+	
+	/**
+	 * public FibonacciHeap(boolean lazyDelete, double purgeRatio)
+	 * 
+	 * FibonacciHeap constructor, creates an empty heap.
+	 * if lazyDelete is true, delete only marks nodes as tombstones, and the tombstones are removed when
+	 * they reach the minimum, or all at once by purge() when they exceed purgeRatio of the nodes in the heap
+	 * 
+	 * precondition: 0 < purgeRatio <= 1
+	 * 
+	 * Complexity is O(1)
+	 */
+	public FibonacciHeap(boolean lazyDelete, double purgeRatio) {
 		size = 0;
 		numOfRoots = 0;
 		min = null;
 		markedNodes = 0;
 		first = null;
+		this.lazyDelete = lazyDelete;
+		this.purgeRatio = purgeRatio;
+		tombstones = 0;
+		purges = 0;
 	}
 	
 	/**
@@ -69,14 +94,91 @@ public class FibonacciHeap
 	   	return newNode;
 	}
 
+	/**
+	 * public HeapNode[] insertAll(int[] keys)
+	 *
+	 * inserts a node for every key in keys and returns the nodes, in the order of keys.
+	 * the new nodes are linked into one list and spliced into the root list once,
+	 * with a single scan for the minimum and a single update of the counters.
+	 * 
+	 * Complexity is O(keys.length)
+	 */
+	public HeapNode[] insertAll(int[] keys)
+	{
+		HeapNode[] nodes = new HeapNode[keys.length];
+		if (keys.length == 0) {
+			return nodes;
+		}
+		HeapNode newMin = null;
+		HeapNode prev = null;
+		for (int i = 0; i < keys.length; i++) {
+			HeapNode newNode = new HeapNode(keys[i]);
+			if (prev != null) {
+				prev.setNext(newNode);
+				newNode.setPrev(prev);
+			}
+			if (newMin == null || keys[i] < newMin.getKey()) {
+				newMin = newNode;
+			}
+			nodes[i] = newNode;
+			prev = newNode;
+		}
+		HeapNode newFirst = nodes[0];
+		newFirst.setPrev(prev); 	//closes the new list into a ring
+		prev.setNext(newFirst);
+		if (isEmpty()) {
+			setMin(newMin);
+		}
+		else {
+			insertRoots(getFirst().getPrev(), getFirst(), newFirst);
+			updateMin(newMin);
+		}
+		setFirst(newFirst);
+		setNumOfRoots(getNumOfRoots() + keys.length);
+		setSize(getSize() + keys.length);
+		return nodes;
+	}
+	
+	/**
+	 * public void heapify()
+	 *
+	 * consolidates the heap into at most one tree per rank (binomial trees when there were no cuts),
+	 * so the cost is paid now rather than by the next deleteMin.
+	 * useful right after a large insertAll.
+	 * in lazy delete mode, tombstones that become the minimum on a tie of keys are deleted, as in deleteMin
+	 * 
+	 * Complexity is O(numOfRoots): every link removes one root
+	 */
+	public void heapify()
+	{
+		if (getNumOfRoots() > 1) {
+			consolidate();
+			removeTombstoneMins();
+		}
+	}
+
 	/**
 	 * public void deleteMin()
 	 *
 	 * deletes the node containing the minimum key.
+	 * tombstones that become the minimum are deleted as well, so the minimum is always a live node
 	 *
 	 * worst case complexity is O(n): rank of min is at most O(log n) + worst case for consolidate is O(log n)
 	 */
 	public void deleteMin()
+	{
+		removeMin();
+		removeTombstoneMins();
+	}
+	
+	/**
+	 * private void removeMin()
+	 *
+	 * deletes the node containing the minimum key, whether it is a tombstone or not
+	 *
+	 * worst case complexity is O(n), see deleteMin()
+	 */
+	private void removeMin()
 	{
 	   	HeapNode min;
 	   	HeapNode prev;
@@ -109,17 +211,102 @@ public class FibonacciHeap
 	   					child.unmark();
 	   					decreaseMarkedNodes();
 	   				}
+	   				child = child.getNext();
 	   			}
 	   		}
-	   		if(getFirst().getKey() == min.getKey()) {
+	   		if(getFirst() == min) {	//compares nodes, not keys: other roots may have the same key
 	   			setFirst(nextSfterMin);
 	   		}
 	   		setNumOfRoots(getNumOfRoots() + rank - 1);
 	   		decreaseSize();
+	   		if (profiler != null) {
+	   			profiler.recordDeleteMin(getNumOfRoots(), getMarkedNodes(), getSize());
+	   		}
 	   		consolidate();
 	   	} 
 	}
 
+	/**
+	 * public int[] deleteMinBatch(int n)
+	 *
+	 * deletes the n nodes with the smallest keys (or all nodes, if there are fewer)
+	 * and returns their keys in ascending order. see deleteMinBatch(int[] out)
+	 *
+	 * Complexity is O(n log(numOfRoots + n log size) + numOfRoots)
+	 */
+	public int[] deleteMinBatch(int n)
+	{
+		int[] out = new int[Math.min(n, size())];
+		deleteMinBatch(out);
+		return out;
+	}
+	
+	/**
+	 * public int deleteMinBatch(int[] out)
+	 *
+	 * deletes the out.length nodes with the smallest keys (or all nodes, if there are fewer),
+	 * writes their keys to out in ascending order and returns how many were deleted.
+	 * like kMin, the next minimum is always a current root, so the roots are kept as candidates
+	 * in a binary heap: a deleted root is replaced by its children in the root list and among the
+	 * candidates. the heap is consolidated only once, after the whole batch, and an attached profiler
+	 * records the batch as a single deleteMin
+	 *
+	 * Complexity is O(numOfRoots) to build the candidates and to consolidate,
+	 * and O(log(candidates) + rank) for each deleted node
+	 */
+	public int deleteMinBatch(int[] out)
+	{
+		int count = Math.min(out.length, size());
+		if (count == 0) {
+			return 0;
+		}
+		HeapNode[] candidates = new HeapNode[getNumOfRoots() + 16];
+		int numOfCandidates = 0;
+		HeapNode root = getFirst();
+		for (int i = 0; i < getNumOfRoots(); i++) {
+			candidates[numOfCandidates++] = root;
+			root = root.getNext();
+		}
+		for (int i = numOfCandidates / 2 - 1; i >= 0; i--) {
+			siftDown(candidates, numOfCandidates, i);
+		}
+		for (int i = 0; i < count; ) {
+			HeapNode removed = candidates[0];
+			candidates[0] = candidates[--numOfCandidates];
+			siftDown(candidates, numOfCandidates, 0);
+			if (removed.isDeleted()) { 	//tombstones are removed but not reported
+				tombstones--;
+			}
+			else {
+				out[i++] = removed.getKey();
+			}
+			HeapNode child = removed.getChild();
+			int rank = removed.getRank();
+			if (numOfCandidates + rank > candidates.length) {
+				HeapNode[] grown = new HeapNode[2 * (numOfCandidates + rank)];
+				System.arraycopy(candidates, 0, grown, 0, numOfCandidates);
+				candidates = grown;
+			}
+			for (int j = 0; j < rank; j++) {
+				candidates[numOfCandidates++] = child;
+				siftUp(candidates, numOfCandidates - 1);
+				child = child.getNext();
+			}
+			removeRoot(removed);
+		}
+		if (getSize() == 0) {
+			clear();
+		}
+		else {
+			if (profiler != null) {	//one deleteMin per batch, with the roots the single consolidate will link
+				profiler.recordDeleteMin(getNumOfRoots(), getMarkedNodes(), getSize());
+			}
+			consolidate();
+			removeTombstoneMins();
+		}
+		return count;
+	}
+	
 	/**
 	 * public HeapNode findMin()
 	 *
@@ -158,6 +345,7 @@ public class FibonacciHeap
     		 }
     	 }
     	 setMarkedMNodes(getMarkedNodes() + heap2.getMarkedNodes());
+    	 tombstones += heap2.getTombstones();
     	 setNumOfRoots(getNumOfRoots() + heap2.getNumOfRoots());
     	 setSize(getSize() + heap2.getSize());
      }
@@ -165,13 +353,13 @@ public class FibonacciHeap
    /**
     * public int size()
     *
-    * returns the number of elements in the heap
+    * returns the number of elements in the heap, not counting tombstones
     * 
     * Complexity is O(1): size is saved as a FibonacciHeap field   
     */
     public int size()
     {
-    	return getSize();
+    	return getSize() - getTombstones();
     }
     	
     /**
@@ -200,6 +388,7 @@ public class FibonacciHeap
      		root = root.getNext();
      	}
      	arr = new int[maxRank+1];
+     	root = getFirst();
      	for (int  i = 0; i < numOfRoots; i++) {
      		arr[root.getRank()]++;
      		root = root.getNext();
@@ -211,12 +400,25 @@ public class FibonacciHeap
     * public void delete(HeapNode x)
     *
     * Deletes the node x from the heap.
+    * in lazy delete mode, a node that is not the minimum is only marked as a tombstone,
+    * and the heap is purged if the tombstones exceed purgeRatio of its nodes
     * 
     * worst case complexity is O(n): calls decreaseKey in O(n) at worst case and deleteMin in O(n) at worst case    *
+    * in lazy delete mode it is O(1) amortized, unless x is the minimum
     */
     public void delete(HeapNode x) 
     {    
-    	if (x.getKey() != getMin().getKey()) {
+    	if (lazyDelete && x != getMin()) {
+    		if (!x.isDeleted()) {
+    			x.setDeleted(true);
+    			tombstones++;
+    			if (tombstones > purgeRatio * getSize()) {
+    				purge();
+    			}
+    		}
+    		return;
+    	}
+    	if (x != getMin()) {
     		int delta = x.getKey() - getMin().getKey() + 1;
         	decreaseKey(x, delta);
     	}
@@ -235,6 +437,7 @@ public class FibonacciHeap
     public void decreaseKey(HeapNode x, int delta)
     {    
     	HeapNode parent = x.getParent();
+    	int cuts = CUTS;
     	x.setKey(x.getKey() - delta);
     	if (!x.isRoot()) {
     		if (x.getKey() < parent.getKey()) {
@@ -243,6 +446,9 @@ public class FibonacciHeap
     		}
     	}
     	updateMin(x);
+    	if (profiler != null) {
+    		profiler.recordDecreaseKey(CUTS - cuts);
+    	}
     }
             
    /**
@@ -287,10 +493,139 @@ public class FibonacciHeap
     	return CUTS;
     }
 
+   /**
+    * public int getTombstones()
+    *
+    * returns the number of deleted nodes that are still in the heap (lazy delete mode)
+    * 
+    * Complexity is O(1)
+    */
+    public int getTombstones()
+    {
+    	return tombstones;
+    }
+    
+   /**
+    * public double tombstoneRatio()
+    *
+    * returns the share of tombstones among the nodes in the heap, 0 for an empty heap
+    * 
+    * Complexity is O(1)
+    */
+    public double tombstoneRatio()
+    {
+    	return getSize() == 0 ? 0 : (double) tombstones / getSize();
+    }
+    
+   /**
+    * public int getPurges()
+    *
+    * returns the number of times the heap was purged of its tombstones
+    * 
+    * Complexity is O(1)
+    */
+    public int getPurges()
+    {
+    	return purges;
+    }
+
+   /**
+    * public void setProfiler(HeapProfiler profiler)
+    *
+    * attaches profiler to the heap, or detaches the current one if profiler is null.
+    * without a profiler every hook costs a single null check
+    *
+    * Complexity is O(1)
+    */
+    public void setProfiler(HeapProfiler profiler)
+    {
+    	this.profiler = profiler;
+    }
+
+   /**
+    * public HeapProfiler getProfiler()
+    *
+    * returns the attached profiler, null if there is none
+    *
+    * Complexity is O(1)
+    */
+    public HeapProfiler getProfiler()
+    {
+    	return profiler;
+    }
+    
+   /**
+    * public void purge()
+    *
+    * removes all tombstones at once: every live node becomes a separate root (the nodes themselves are kept,
+    * so references to them stay valid) and the heap is consolidated
+    * 
+    * Complexity is O(n): visits every node once, and consolidate links at most n roots
+    */
+    public void purge()
+    {
+    	if (tombstones == 0) {
+    		return;
+    	}
+    	int live = getSize() - tombstones;
+    	HeapNode newFirst = null;
+    	HeapNode last = null;
+    	HeapNode[] rings = new HeapNode[16]; 	//stack of sibiling rings left to visit
+    	int numOfRings = 0;
+    	if (!isEmpty()) {
+    		rings[numOfRings++] = getFirst();
+    	}
+    	while (numOfRings > 0) {
+    		HeapNode head = rings[--numOfRings];
+    		HeapNode node = head;
+    		do {
+    			HeapNode next = node.getNext();
+    			if (node.getChild() != null) {
+    				if (numOfRings == rings.length) {
+    					HeapNode[] grown = new HeapNode[2 * numOfRings];
+    					System.arraycopy(rings, 0, grown, 0, numOfRings);
+    					rings = grown;
+    				}
+    				rings[numOfRings++] = node.getChild();
+    			}
+    			if (!node.isDeleted()) { 	//appends node to the new root list as a single node tree
+    				node.setParent(null);
+    				node.setChild(null);
+    				node.setRank(0);
+    				node.unmark();
+    				if (last == null) {
+    					newFirst = node;
+    				}
+    				else {
+    					last.setNext(node);
+    					node.setPrev(last);
+    				}
+    				last = node;
+    			}
+    			node = next;
+    		} while (node != head);
+    	}
+    	clear();
+    	tombstones = 0;
+    	purges++;
+    	if (live > 0) {
+    		newFirst.setPrev(last);
+    		last.setNext(newFirst);
+    		setFirst(newFirst);
+    		setMin(newFirst);
+    		setNumOfRoots(live);
+    		setSize(live);
+    		consolidate();
+    	}
+    }
+    
   /**
     * public static int[] kMin(FibonacciHeap H, int k) 
     *
     * This static function returns the k minimal elements in a binomial tree H.
+    * tombstones (lazy delete mode) are expanded like the other nodes but not returned or counted.
+    * 
+    * precondition: k <= H.size()
     * 
     * Complexity is O(k(logk+degH)): for each of the k minimal nodes this method calls
     * the static method insertLevel in O(degH) and also calls deleteMin on a helper heap of O(k*degH) nodes
@@ -308,8 +643,10 @@ public class FibonacciHeap
         	currMin = temp.findMin();
             HeapNode orgNode = currMin.getPointer();
             temp.deleteMin();
-            keyArr[i] = currMin.getKey();
-            i++;
+            if (!orgNode.isDeleted()) {
+            	keyArr[i] = currMin.getKey();
+            	i++;
+            }
             insertLevel(temp, orgNode.getChild());
         }
         return keyArr;
@@ -594,6 +931,20 @@ public class FibonacciHeap
 		return parent;
 	}
 	
+	/**
+	 * private void removeTombstoneMins()
+	 * 
+	 * deletes minimal nodes while they are tombstones, so that the minimum is a live node
+	 * 
+	 * Complexity is O(1) if the minimum is live, otherwise a removeMin for each tombstone removed
+	 */
+	private void removeTombstoneMins() {
+		while (tombstones > 0 && !isEmpty() && getMin().isDeleted()) {
+			tombstones--;
+			removeMin();
+		}
+	}
+	
 	/**
 	 * private void clear()
 	 * 
@@ -607,6 +958,7 @@ public class FibonacciHeap
 		setNumOfRoots(0);
 		setSize(0);
 		setMarkedMNodes(0);
+		tombstones = 0;
 	}
 	
 	/**
@@ -621,6 +973,9 @@ public class FibonacciHeap
 	private void consolidate() {
 		int maxRank = (int) Math.ceil(1.45 * Math.log(getSize() + 1) / Math.log(2)) + 1;
 		HeapNode[] rankTrees = new HeapNode[maxRank];
+		if (profiler != null) {
+			profiler.recordConsolidate();
+		}
 		toBuckets(rankTrees);
 		fromBuckets(rankTrees);
 	}
@@ -667,6 +1022,7 @@ public class FibonacciHeap
 		int newNumOfRoots = 0;
 		int size = getSize();
 		int markedNodes = getMarkedNodes();
+		int tombstones = this.tombstones;
 		clear();
 		for (HeapNode tree : rankTrees) {
 			if(tree != null) {
@@ -682,14 +1038,106 @@ public class FibonacciHeap
 					insertRoots(prev, next, tree);
 					updateMin(tree);
 				}
+				if (profiler != null) {
+					profiler.recordRank(tree.getRank());
+				}
 				newNumOfRoots++;
 			}
 		}
 		setSize(size);
 		setMarkedMNodes(markedNodes);
+		this.tombstones = tombstones;
 		setNumOfRoots(newNumOfRoots);
 	}
 	
+	/**
+	 * private void removeRoot(HeapNode x)
+	 * 
+	 * helper method for deleteMinBatch: removes the root x from the heap and puts its children
+	 * (unmarked) in its place in the root list. the minimum is not updated
+	 * 
+	 * precondition: x is a root
+	 * 
+	 * Complexity is O(x.getRank())
+	 */
+	private void removeRoot(HeapNode x) {
+		HeapNode prev = x.getPrev();
+		HeapNode next = x.getNext();
+		HeapNode child = x.getChild();
+		int rank = x.getRank();
+		HeapNode replacement;
+		for (int i = 0; i < rank; i++) {
+			child.setParent(null);
+			unmarkNode(child);
+			child = child.getNext();
+		}
+		if (rank > 0) {
+			if (getNumOfRoots() > 1) {
+				insertRoots(prev, next, child);
+			}
+			replacement = child;
+		}
+		else if (getNumOfRoots() > 1) {
+			prev.setNext(next);
+			next.setPrev(prev);
+			replacement = next;
+		}
+		else {
+			replacement = null;
+		}
+		if (getFirst() == x) {
+			setFirst(replacement);
+		}
+		setNumOfRoots(getNumOfRoots() + rank - 1);
+		decreaseSize();
+	}
+	
+	/**
+	 * private static void siftUp(HeapNode[] heap, int i)
+	 * 
+	 * helper method for deleteMinBatch: moves heap[i] up a binary min-heap ordered by key
+	 * 
+	 * Complexity is O(log i)
+	 */
+	private static void siftUp(HeapNode[] heap, int i) {
+		HeapNode node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent].getKey() <= node.getKey()) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = node;
+	}
+	
+	/**
+	 * private static void siftDown(HeapNode[] heap, int size, int i)
+	 * 
+	 * helper method for deleteMinBatch: moves heap[i] down a binary min-heap of size nodes ordered by key
+	 * 
+	 * Complexity is O(log size)
+	 */
+	private static void siftDown(HeapNode[] heap, int size, int i) {
+		if (i >= size) {
+			return;
+		}
+		HeapNode node = heap[i];
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1].getKey() < heap[child].getKey()) {
+				child++;
+			}
+			if (node.getKey() <= heap[child].getKey()) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = node;
+	}
+	
 	/**
 	 * private void insertRoots(HeapNode prev, HeapNode next, HeapNode firstRoot)
 	 * 
@@ -726,7 +1174,7 @@ public class FibonacciHeap
     	increaseNumOfRoots();
     	CUTS++;
     	if (!x.isOnlyChild()) {	//update parent
-    		if (parent.getChild().getKey() == x.getKey()) {
+    		if (parent.getChild() == x) {
     			parent.setChild(x.getNext());
     		}
     		x.getPrev().setNext(x.getNext()); //update former sibilings
@@ -788,11 +1236,10 @@ public class FibonacciHeap
 	 private static void insertLevel(FibonacciHeap C, HeapNode x) {
 	  	if (x != null) {
 	   		HeapNode child = x;
-	   		int childPointerKey = child.getKey();
 	   		HeapNode curr = C.insert(child.getKey());
 	   		curr.setPointer(child);
 	   		child = child.getNext();
-	   		while (childPointerKey != child.getKey()) {
+	   		while (child != x) {
 	   			curr = C.insert(child.getKey());
 	   			curr.setPointer(child);
 	   			child = child.getNext();
@@ -806,7 +1253,7 @@ public class FibonacciHeap
     * 
     * this class implements a node in a Fibonacci heap
     */
-    public class HeapNode {
+    public class HeapNode implements MeldablePriorityQueue.Node {
 
     	public int key;
     	private int rank;
@@ -816,6 +1263,7 @@ public class FibonacciHeap
     	private HeapNode prev;
     	private HeapNode next;
     	private HeapNode nodePointer;
+    	private boolean deleted;
     	
     	/**
     	 * public HeapNode(int key)
@@ -1029,7 +1477,7 @@ public class FibonacciHeap
     	 * Complexity is O(1)
     	 */
     	public boolean isOnlyChild() {
-    		return next.getKey() == key;
+    		return next == this;
     	}
     	
     	/**
@@ -1054,6 +1502,28 @@ public class FibonacciHeap
     		marked = false;
     	}
     	
+    	/**
+    	 * public boolean isDeleted()
+    	 * 
+    	 * returns true iff the node was deleted lazily and is a tombstone
+    	 * 
+    	 * Complexity is O(1)
+    	 */
+    	public boolean isDeleted() {
+    		return deleted;
+    	}
+    	
+    	/**
+    	 * public void setDeleted(boolean isDeleted)
+    	 * 
+    	 * marks the node as a tombstone, or clears the tombstone
+    	 * 
+    	 * Complexity is O(1)
+    	 */
+    	public void setDeleted(boolean isDeleted) {
+    		deleted = isDeleted;
+    	}
+    	
     	/**
     	 * public boolean isRootk()
     	 * 